@@ -0,0 +1,59 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.util.UUID;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.service.BookAvailabilityIndex;
+import com.br.project.librarybookapi.service.BookSearchIndex;
+import com.br.project.librarybookapi.service.CountCache;
+import com.br.project.librarybookapi.service.impl.BookServiceImpl;
+import com.br.project.librarybookapi.service.impl.LoanServiceImpl;
+
+/**
+ * Contexto mínimo para os benchmarks: camada de serviço e repositórios sobre
+ * um H2 em memória próprio, sem agendamentos. {@link #startWeb} acrescenta o
+ * Tomcat com os controllers.
+ */
+@Configuration
+@EnableAutoConfiguration
+@EntityScan(basePackageClasses = Book.class)
+@EnableJpaRepositories(basePackageClasses = BookRepository.class)
+@Import({ BookServiceImpl.class, LoanServiceImpl.class, BookSearchIndex.class, BookAvailabilityIndex.class, CountCache.class })
+public class BenchmarkApplication {
+
+	public static ConfigurableApplicationContext start() {
+		return builder(BenchmarkApplication.class)
+				.web(WebApplicationType.NONE)
+				.run();
+	}
+	
+	/**
+	 * Sobe também o servidor web, numa porta livre (local.server.port).
+	 */
+	public static ConfigurableApplicationContext startWeb(String... properties) {
+		return builder(BenchmarkApplication.class, WebBenchmarkConfig.class)
+				.web(WebApplicationType.SERVLET)
+				.properties("server.port=0")
+				.properties(properties)
+				.run();
+	}
+	
+	private static SpringApplicationBuilder builder(Class<?>... sources) {
+		return new SpringApplicationBuilder(sources)
+				.logStartupInfo(false)
+				.properties(
+						"spring.main.banner-mode=off",
+						"spring.datasource.url=jdbc:h2:mem:benchmark-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+						"logging.level.root=WARN");
+	}
+}
@@ -0,0 +1,79 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.service.BookSearchIndex;
+import com.br.project.librarybookapi.service.BookService;
+
+/**
+ * BookServiceImpl.find pela base (searchIndex=false) e pelo índice em memória.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServiceBenchmark {
+	
+	@Param({"1000", "10000"})
+	int books;
+	
+	@Param({"true", "false"})
+	boolean searchIndex;
+	
+	ConfigurableApplicationContext context;
+	
+	BookService service;
+	
+	Pageable pageRequest = PageRequest.of(0, 20);
+	
+	@Setup
+	public void setUp() {
+		context = BenchmarkApplication.start();
+		Datasets.seedBooks(context.getBean(BookRepository.class), books);
+		if(searchIndex) {
+			context.getBean(BookSearchIndex.class).rebuild();
+		}
+		service = context.getBean(BookService.class);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+	
+	@Benchmark
+	public Page<Book> findByTitle() {
+		return service.find(Book.builder().title("livro 12").build(), pageRequest);
+	}
+	
+	@Benchmark
+	public Page<Book> findByAuthor() {
+		return service.find(Book.builder().author("AUTOR 7").build(), pageRequest);
+	}
+	
+	@Benchmark
+	public Page<Book> findAll() {
+		return service.find(new Book(), pageRequest);
+	}
+}
@@ -0,0 +1,76 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.repository.LoanRepository;
+
+/**
+ * Massa de dados dos benchmarks. Um em cada dez livros fica emprestado e metade
+ * dos livros tem um empréstimo já devolvido.
+ */
+final class Datasets {
+	
+	private static final int CHUNK_SIZE = 1000;
+	
+	private Datasets() {
+	}
+	
+	static Book book(long i) {
+		return Book.builder().title("Livro " + i).author("Autor " + (i % 100)).isbn(String.format("978%010d", i)).build();
+	}
+	
+	static Loan loan(long i, Book book) {
+		return Loan.builder().customer("Cliente " + (i % 500)).customerEmail("cliente" + (i % 500) + "@email.com")
+				.loanDate(LocalDate.now().minusDays(i % 30)).book(book).returned(i % 10 != 1).build();
+	}
+	
+	static boolean loaned(long i) {
+		return i % 10 == 1;
+	}
+	
+	static List<Book> seedBooks(BookRepository repository, int size) {
+		List<Book> saved = new ArrayList<>(size);
+		List<Book> chunk = new ArrayList<>(CHUNK_SIZE);
+		for(long i = 0; i < size; i++) {
+			chunk.add(book(i));
+			if(chunk.size() == CHUNK_SIZE || i == size - 1) {
+				saved.addAll(repository.saveAll(chunk));
+				chunk.clear();
+			}
+		}
+		return saved;
+	}
+	
+	static void seedLoans(LoanRepository repository, List<Book> books) {
+		List<Loan> chunk = new ArrayList<>(CHUNK_SIZE);
+		for(int i = 0; i < books.size(); i++) {
+			if(i % 2 == 0 || loaned(i)) {
+				chunk.add(loan(i, books.get(i)));
+			}
+			if(chunk.size() == CHUNK_SIZE || i == books.size() - 1) {
+				repository.saveAll(chunk);
+				chunk.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Empréstimos com livro já carregado, como chegam aos controllers, sem base.
+	 */
+	static List<Loan> loanRows(int rows) {
+		List<Loan> loans = new ArrayList<>(rows);
+		for(long i = 0; i < rows; i++) {
+			Book book = book(i);
+			book.setId(i + 1);
+			Loan loan = loan(i, book);
+			loan.setId(i + 1);
+			loans.add(loan);
+		}
+		return loans;
+	}
+}
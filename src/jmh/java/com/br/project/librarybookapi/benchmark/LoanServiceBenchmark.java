@@ -0,0 +1,97 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.br.project.librarybookapi.exception.BusinessException;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.repository.LoanRepository;
+import com.br.project.librarybookapi.service.BookAvailabilityIndex;
+import com.br.project.librarybookapi.service.LoanService;
+
+/**
+ * LoanServiceImpl.save com a verificação de disponibilidade, tanto para livro
+ * livre quanto para livro já emprestado. Depois de cada empréstimo o livro é
+ * liberado no índice para que possa ser emprestado de novo na próxima volta.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanServiceBenchmark {
+	
+	@Param({"1000", "10000"})
+	int books;
+	
+	ConfigurableApplicationContext context;
+	
+	LoanService service;
+	
+	BookAvailabilityIndex availabilityIndex;
+	
+	List<Book> available;
+	
+	Book loaned;
+	
+	AtomicInteger next = new AtomicInteger();
+	
+	@Setup
+	public void setUp() {
+		context = BenchmarkApplication.start();
+		List<Book> seeded = Datasets.seedBooks(context.getBean(BookRepository.class), books);
+		Datasets.seedLoans(context.getBean(LoanRepository.class), seeded);
+		availabilityIndex = context.getBean(BookAvailabilityIndex.class);
+		availabilityIndex.rebuild();
+		service = context.getBean(LoanService.class);
+		available = IntStream.range(0, seeded.size()).filter(i -> !Datasets.loaned(i)).mapToObj(seeded::get).collect(Collectors.toList());
+		loaned = seeded.get(1);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+	
+	@Benchmark
+	public Loan save() {
+		Book book = available.get(Math.floorMod(next.getAndIncrement(), available.size()));
+		Loan loan = service.save(newLoan(book));
+		availabilityIndex.release(book.getId());
+		return loan;
+	}
+	
+	@Benchmark
+	public Object saveLoanedBook() {
+		try {
+			return service.save(newLoan(loaned));
+		} catch (BusinessException e) {
+			return e;
+		}
+	}
+	
+	private Loan newLoan(Book book) {
+		return Loan.builder().book(book).customer("Fulano").customerEmail("fulano@email.com").loanDate(LocalDate.now()).build();
+	}
+}
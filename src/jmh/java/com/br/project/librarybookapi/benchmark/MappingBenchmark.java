@@ -0,0 +1,97 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.resource.DtoMapper;
+
+/**
+ * Conversão entidade para DTO de uma página. DtoMapper é o usado pelos
+ * controllers; ModelMapper e os builders ficam como referência.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+	
+	@Param({"20", "100"})
+	int rows;
+	
+	ModelMapper modelMapper;
+	
+	List<Loan> loans;
+	
+	List<Book> books;
+	
+	@Setup
+	public void setUp() {
+		modelMapper = new ModelMapper();
+		loans = Datasets.loanRows(rows);
+		books = loans.stream().map(Loan::getBook).collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public List<BookDTO> bookDtoMapper() {
+		return DtoMapper.toBookDTOs(books);
+	}
+	
+	@Benchmark
+	public List<BookDTO> bookModelMapper() {
+		return books.stream()
+				.map(book -> modelMapper.map(book, BookDTO.class))
+				.collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public List<BookDTO> bookHandWritten() {
+		return books.stream()
+				.map(entity -> BookDTO.builder().id(entity.getId()).author(entity.getAuthor()).title(entity.getTitle()).isbn(entity.getIsbn()).build())
+				.collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public List<LoanDTO> loanDtoMapper() {
+		return DtoMapper.toLoanDTOs(loans);
+	}
+	
+	@Benchmark
+	public List<LoanDTO> loanModelMapper() {
+		return loans.stream()
+				.map(loan -> {
+					BookDTO bookDTO = modelMapper.map(loan.getBook(), BookDTO.class);
+					LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
+					loanDTO.setBook(bookDTO);
+					return loanDTO;
+				}).collect(Collectors.toList());
+	}
+	
+	@Benchmark
+	public List<LoanDTO> loanHandWritten() {
+		return loans.stream().map(entity -> {
+			Book book = entity.getBook();
+			BookDTO bookDTO = BookDTO.builder().id(book.getId()).author(book.getAuthor()).title(book.getTitle()).isbn(book.getIsbn()).build();
+			return LoanDTO.builder().id(entity.getId()).book(bookDTO).customer(entity.getCustomer()).loanDate(entity.getLoanDate()).build();
+		}).collect(Collectors.toList());
+	}
+}
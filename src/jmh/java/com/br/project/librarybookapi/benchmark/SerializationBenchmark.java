@@ -0,0 +1,71 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.resource.DtoMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Serialização Jackson das páginas devolvidas por GET /api/books e
+ * GET /api/loans, com o ObjectMapper configurado como o do Spring Boot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+	
+	@Param({"20", "100"})
+	int rows;
+	
+	ObjectMapper objectMapper;
+	
+	Page<BookDTO> bookPage;
+	
+	Page<LoanDTO> loanPage;
+	
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+		List<Loan> loans = Datasets.loanRows(rows);
+		List<BookDTO> books = DtoMapper.toBookDTOs(loans.stream().map(Loan::getBook).collect(Collectors.toList()));
+		List<LoanDTO> loanDTOs = DtoMapper.toLoanDTOs(loans);
+		bookPage = new PageImpl<BookDTO>(books, PageRequest.of(0, rows), rows * 50L);
+		loanPage = new PageImpl<LoanDTO>(loanDTOs, PageRequest.of(0, rows), rows * 50L);
+	}
+	
+	@Benchmark
+	public byte[] bookPage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(bookPage);
+	}
+	
+	@Benchmark
+	public byte[] loanPage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(loanPage);
+	}
+}
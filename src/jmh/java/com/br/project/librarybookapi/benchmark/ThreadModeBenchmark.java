@@ -0,0 +1,97 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.br.project.librarybookapi.VirtualThreads;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+
+/**
+ * GET /api/books/{id} com muitos clientes simultâneos, com o Tomcat em threads
+ * de plataforma (server.tomcat.threads.max) ou virtuais. O modo de amostragem
+ * dá os percentis de latência (p0.99); o máximo de requisições em andamento
+ * no servidor é impresso ao fim de cada iteração. mode=virtual exige Java 21.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(value = 1, jvmArgsAppend = "-Dhttp.maxConnections=1000")
+public class ThreadModeBenchmark {
+	
+	@Param({"platform", "virtual"})
+	String mode;
+	
+	@Param({"20"})
+	int ioLatency;
+	
+	@Param({"200"})
+	int tomcatThreads;
+	
+	ConfigurableApplicationContext context;
+	
+	URL[] urls;
+	
+	@Setup
+	public void setUp() throws IOException {
+		if("virtual".equals(mode) && !VirtualThreads.isSupported()) {
+			throw new IllegalStateException("mode=virtual exige Java 21 ou superior");
+		}
+		context = BenchmarkApplication.startWeb(
+				"library.threads.virtual=" + "virtual".equals(mode),
+				"server.tomcat.threads.max=" + tomcatThreads,
+				"benchmark.io-latency=" + ioLatency);
+		List<Book> books = Datasets.seedBooks(context.getBean(BookRepository.class), 1000);
+		String port = context.getEnvironment().getProperty("local.server.port");
+		urls = new URL[books.size()];
+		for(int i = 0; i < urls.length; i++) {
+			urls[i] = new URL("http://localhost:" + port + "/api/books/" + books.get(i).getId());
+		}
+	}
+	
+	@TearDown(Level.Iteration)
+	public void reportInFlight() {
+		System.out.println("max in-flight: " + WebBenchmarkConfig.InFlight.resetMax());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+	
+	@Benchmark
+	public int getBook() throws IOException {
+		URL url = urls[(int) (Thread.currentThread().getId() % urls.length)];
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try (InputStream body = connection.getInputStream()) {
+			byte[] buffer = new byte[1024];
+			while(body.read(buffer) >= 0) {
+				// consome a resposta para reaproveitar a conexão
+			}
+			return connection.getResponseCode();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.br.project.librarybookapi.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.br.project.librarybookapi.VirtualThreadsConfig;
+import com.br.project.librarybookapi.resource.BookController;
+import com.br.project.librarybookapi.service.impl.BookImportServiceImpl;
+
+/**
+ * Controllers e o modo de threads para os benchmarks HTTP. {@link InFlight}
+ * conta as requisições em andamento e simula a espera de I/O remoto
+ * (benchmark.io-latency, em ms) que o H2 em memória não tem.
+ */
+@Configuration
+@Import({ BookController.class, BookImportServiceImpl.class, VirtualThreadsConfig.class, WebBenchmarkConfig.InFlight.class })
+public class WebBenchmarkConfig {
+
+	@Component
+	public static class InFlight extends OncePerRequestFilter {
+		
+		static final AtomicInteger current = new AtomicInteger();
+		
+		static final AtomicInteger max = new AtomicInteger();
+		
+		@Value("${benchmark.io-latency:0}")
+		long ioLatency;
+		
+		@Override
+		protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+				throws ServletException, IOException {
+			max.accumulateAndGet(current.incrementAndGet(), Math::max);
+			try {
+				if(ioLatency > 0) {
+					TimeUnit.MILLISECONDS.sleep(ioLatency);
+				}
+				chain.doFilter(request, response);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				current.decrementAndGet();
+			}
+		}
+		
+		static int resetMax() {
+			return max.getAndSet(0);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.br.project.librarybookapi;
+
+import java.util.Locale;
+
+/**
+ * Leitura do cabeçalho Accept-Encoding (RFC 7231, seção 5.3.4) para decidir
+ * se a resposta pode ir compactada com gzip. Vale o q da codificação gzip
+ * (ou x-gzip); sem ela, o q de "*"; q=0 recusa a codificação.
+ */
+public final class AcceptEncoding {
+
+	private AcceptEncoding() {
+	}
+
+	public static boolean acceptsGzip(String acceptEncoding) {
+		if(acceptEncoding == null) {
+			return false;
+		}
+		Double gzip = null;
+		Double any = null;
+		for(String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim().toLowerCase(Locale.ROOT);
+			if(name.equals("gzip") || name.equals("x-gzip")) {
+				gzip = max(gzip, quality(parts));
+			} else if(name.equals("*")) {
+				any = max(any, quality(parts));
+			}
+		}
+		Double quality = gzip != null ? gzip : any;
+		return quality != null && quality > 0;
+	}
+
+	/**
+	 * Peso do parâmetro q, 1 quando ausente; valores inválidos contam como 0.
+	 */
+	private static double quality(String[] parts) {
+		for(int i = 1; i < parts.length; i++) {
+			String parameter = parts[i].trim();
+			int equals = parameter.indexOf('=');
+			if(equals > 0 && parameter.substring(0, equals).trim().equalsIgnoreCase("q")) {
+				try {
+					double quality = Double.parseDouble(parameter.substring(equals + 1).trim());
+					return quality >= 0 && quality <= 1 ? quality : 0;
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	private static Double max(Double current, double quality) {
+		return current == null ? quality : Math.max(current, quality);
+	}
+}
@@ -0,0 +1,78 @@
+package com.br.project.librarybookapi;
+
+/**
+ * Limite de requisições simultâneas ajustado pela latência observada (AIMD):
+ * cada resposta dentro do alvo soma 1/limite, ou seja, cerca de +1 por janela
+ * de requisições, enquanto o limite estiver em uso; uma resposta acima do
+ * alvo multiplica o limite por 0.9, no máximo uma vez por intervalo do alvo,
+ * para que uma rajada de respostas lentas não derrube o limite de uma vez.
+ * 
+ * Cada prioridade só ocupa uma parte do limite, então sob pressão as
+ * requisições de prioridade baixa são recusadas antes das demais.
+ */
+final class AdaptiveConcurrencyLimit {
+
+	enum Priority {
+		HIGH(1.0),
+		NORMAL(0.8),
+		LOW(0.5);
+		
+		private final double share;
+		
+		Priority(double share) {
+			this.share = share;
+		}
+	}
+	
+	private static final double BACKOFF_RATIO = 0.9;
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyTargetNanos;
+	private double limit;
+	private int inFlight;
+	private long lastDecrease;
+	
+	AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyTargetNanos, long now) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyTargetNanos = latencyTargetNanos;
+		this.limit = initialLimit;
+		this.lastDecrease = now - latencyTargetNanos;
+	}
+	
+	synchronized boolean tryAcquire(Priority priority) {
+		if(inFlight < Math.max(1, (int) (limit * priority.share))) {
+			inFlight++;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @param sample false para requisições longas por natureza (exportações e
+	 *               streams), que não devem influenciar o limite
+	 */
+	synchronized void release(long latencyNanos, boolean sample, long now) {
+		inFlight--;
+		if(!sample) {
+			return;
+		}
+		if(latencyNanos > latencyTargetNanos) {
+			if(now - lastDecrease >= latencyTargetNanos) {
+				limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+				lastDecrease = now;
+			}
+		} else if(inFlight + 1 >= limit / 2) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+	}
+	
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+	
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+}
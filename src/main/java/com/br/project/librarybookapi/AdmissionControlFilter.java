@@ -0,0 +1,227 @@
+package com.br.project.librarybookapi;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.br.project.librarybookapi.AdaptiveConcurrencyLimit.Priority;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Controle de admissão na frente dos controllers da /api. Cada cliente tem
+ * um balde de tokens (429 quando acaba) e todas as requisições dividem um
+ * limite de simultaneidade que acompanha a latência (503 quando cheio), de
+ * modo que, com o banco lento, as requisições excedentes são recusadas na
+ * hora em vez de prenderem threads do Tomcat até o timeout. Leituras têm
+ * prioridade sobre escritas, e escritas sobre exportações, streams e
+ * operações em lote.
+ *
+ * O cliente é o usuário autenticado ou, sem ele, o endereço de origem. O
+ * cabeçalho library.admission.client-header (X-Client-Id) só é aceito quando
+ * a requisição vem de um dos library.admission.trusted-proxies: vindo de
+ * qualquer outro endereço, bastaria trocar o valor a cada requisição para
+ * ganhar um balde cheio e expulsar do cache os baldes dos outros clientes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name = "library.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlFilter extends OncePerRequestFilter implements MeterBinder {
+	
+	private static final String TOO_MANY_REQUESTS = "{\"errors\":[\"Too many requests\"]}";
+	
+	private static final String SERVER_BUSY = "{\"errors\":[\"Server busy, retry later\"]}";
+	
+	private final Cache<String, TokenBucket> buckets;
+	private final AdaptiveConcurrencyLimit limit;
+	private final String clientHeader;
+	private final Set<String> trustedProxies;
+	private final double burst;
+	private final double rate;
+	private final long busyRetryAfter;
+	private final AtomicLong rateRejected = new AtomicLong();
+	private final AtomicLong busyRejected = new AtomicLong();
+	
+	public AdmissionControlFilter(
+			@Value("${library.admission.client-header:X-Client-Id}") String clientHeader,
+			@Value("${library.admission.trusted-proxies:}") String[] trustedProxies,
+			@Value("${library.admission.rate:50}") double rate,
+			@Value("${library.admission.burst:100}") double burst,
+			@Value("${library.admission.initial-limit:50}") int initialLimit,
+			@Value("${library.admission.min-limit:5}") int minLimit,
+			@Value("${library.admission.max-limit:200}") int maxLimit,
+			@Value("${library.admission.latency-target:500ms}") Duration latencyTarget,
+			@Value("${library.admission.busy-retry-after:1s}") Duration busyRetryAfter) {
+		this.clientHeader = clientHeader;
+		this.trustedProxies = new HashSet<>();
+		for(String proxy : trustedProxies) {
+			if(!proxy.trim().isEmpty()) {
+				this.trustedProxies.add(proxy.trim());
+			}
+		}
+		this.rate = rate;
+		this.burst = burst;
+		this.busyRetryAfter = Math.max(1, busyRetryAfter.getSeconds());
+		this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, latencyTarget.toNanos(), System.nanoTime());
+		this.buckets = Caffeine.newBuilder()
+				.maximumSize(100_000)
+				.expireAfterAccess(Duration.ofMinutes(10))
+				.build();
+	}
+	
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+	}
+	
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		long start = System.nanoTime();
+		long wait = buckets.get(clientId(request), client -> new TokenBucket(burst, rate, start)).tryConsume(start);
+		if(wait > 0) {
+			rateRejected.incrementAndGet();
+			reject(response, HttpStatus.TOO_MANY_REQUESTS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1), TOO_MANY_REQUESTS);
+			return;
+		}
+		if(!limit.tryAcquire(priority(request))) {
+			busyRejected.incrementAndGet();
+			reject(response, HttpStatus.SERVICE_UNAVAILABLE, busyRetryAfter, SERVER_BUSY);
+			return;
+		}
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			if(request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new ReleaseOnCompletion());
+			} else {
+				long now = System.nanoTime();
+				limit.release(now - start, true, now);
+			}
+		}
+	}
+	
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("library.admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+			.description("Limite atual de requisições simultâneas")
+			.register(registry);
+		Gauge.builder("library.admission.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+			.description("Requisições admitidas em andamento")
+			.register(registry);
+		FunctionCounter.builder("library.admission.rejected", rateRejected, AtomicLong::get)
+			.tag("reason", "rate")
+			.description("Requisições recusadas pelo controle de admissão")
+			.register(registry);
+		FunctionCounter.builder("library.admission.rejected", busyRejected, AtomicLong::get)
+			.tag("reason", "concurrency")
+			.description("Requisições recusadas pelo controle de admissão")
+			.register(registry);
+	}
+	
+	/**
+	 * Exportações, streams e operações em lote são longas e caras; as demais
+	 * escritas vêm depois das leituras.
+	 */
+	static Priority priority(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		String method = request.getMethod();
+		if(path.equals("/api/loans/export") || path.startsWith("/api/stream/")
+				|| (method.equals("POST") && path.equals("/api/books/import"))
+				|| (method.equals("PATCH") && path.equals("/api/loans"))) {
+			return Priority.LOW;
+		}
+		if(method.equals("GET") || method.equals("HEAD")) {
+			return Priority.HIGH;
+		}
+		return Priority.NORMAL;
+	}
+	
+	private String clientId(HttpServletRequest request) {
+		Principal principal = request.getUserPrincipal();
+		if(principal != null) {
+			return "user:" + principal.getName();
+		}
+		String address = request.getRemoteAddr();
+		if(trustedProxies.contains(address)) {
+			String client = request.getHeader(clientHeader);
+			if(client != null && !client.isEmpty()) {
+				return "client:" + client;
+			}
+		}
+		return "address:" + address;
+	}
+	
+	private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String body)
+			throws IOException {
+		response.setStatus(status.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		byte[] content = body.getBytes(StandardCharsets.UTF_8);
+		response.setContentLength(content.length);
+		response.getOutputStream().write(content);
+	}
+	
+	/**
+	 * Respostas assíncronas (exportações e streams) só liberam a vaga quando
+	 * terminam, e sem entrar na conta da latência.
+	 */
+	private class ReleaseOnCompletion implements AsyncListener {
+		
+		private final AtomicBoolean released = new AtomicBoolean();
+		
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release();
+		}
+		
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			release();
+		}
+		
+		@Override
+		public void onError(AsyncEvent event) {
+			release();
+		}
+		
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			event.getAsyncContext().addListener(this);
+		}
+		
+		private void release() {
+			if(released.compareAndSet(false, true)) {
+				limit.release(0, false, System.nanoTime());
+			}
+		}
+	}
+}
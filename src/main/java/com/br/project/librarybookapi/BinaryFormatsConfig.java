@@ -0,0 +1,42 @@
+package com.br.project.librarybookapi;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Formatos binários negociados pelo Accept: application/cbor e
+ * application/x-jackson-smile, com a mesma configuração do Jackson usada no
+ * JSON. Nesses formatos as páginas levam só content, number, size e
+ * totalElements; o JSON continua com o PageImpl completo para não quebrar
+ * os clientes atuais.
+ */
+@Configuration
+public class BinaryFormatsConfig {
+
+	@JsonIgnoreProperties({"pageable", "sort", "first", "last", "numberOfElements", "empty", "totalPages"})
+	abstract static class LeanPageMixin {
+	}
+	
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(lean(builder.factory(new CBORFactory()).build()));
+	}
+	
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(lean(builder.factory(new SmileFactory()).build()));
+	}
+	
+	private static ObjectMapper lean(ObjectMapper mapper) {
+		return mapper.addMixIn(PageImpl.class, LeanPageMixin.class);
+	}
+}
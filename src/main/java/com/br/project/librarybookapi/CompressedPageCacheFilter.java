@@ -0,0 +1,111 @@
+package com.br.project.librarybookapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Guarda já compactadas em gzip as páginas grandes que têm ETag. O ETag
+ * identifica o conteúdo, então a mesma página pedida de novo é servida do
+ * cache sem compactar outra vez. A compressão do Tomcat (server.compression)
+ * não compacta respostas com ETag forte, então essas páginas só saem
+ * compactadas por aqui; o ETag vai como fraco porque o corpo compactado não
+ * é idêntico byte a byte ao original.
+ * 
+ * Só vale para as listagens e consultas de livros e empréstimos: as
+ * exportações e os streams são assíncronos e não podem ser bufferizados.
+ */
+@Component
+@ConditionalOnProperty(name = "library.compression.page-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CompressedPageCacheFilter extends OncePerRequestFilter implements MeterBinder {
+
+	private static final Pattern PAGE_PATHS = Pattern.compile("/api/(books(/\\d+(/loans)?)?|loans)");
+	
+	private static final String GZIP = "gzip";
+	
+	private final Cache<String, byte[]> pages;
+	private final long minSize;
+	
+	public CompressedPageCacheFilter(
+			@Value("${library.compression.page-cache.maximum-weight:64MB}") DataSize maximumWeight,
+			@Value("${library.compression.page-cache.time-to-live:10m}") Duration timeToLive,
+			@Value("${library.compression.page-cache.min-size:8KB}") DataSize minSize) {
+		this.pages = Caffeine.newBuilder()
+				.maximumWeight(maximumWeight.toBytes())
+				.<String, byte[]>weigher((key, value) -> key.length() + value.length)
+				.expireAfterWrite(timeToLive)
+				.recordStats()
+				.build();
+		this.minSize = minSize.toBytes();
+	}
+	
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		if(!"GET".equals(request.getMethod()) || !AcceptEncoding.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+			return true;
+		}
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		return !PAGE_PATHS.matcher(path).matches();
+	}
+	
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+		chain.doFilter(request, wrapper);
+		
+		String etag = wrapper.getHeader(HttpHeaders.ETAG);
+		if(wrapper.getStatus() != HttpStatus.OK.value() || etag == null || wrapper.getContentSize() < minSize
+				|| wrapper.getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+			wrapper.copyBodyToResponse();
+			return;
+		}
+		String key = request.getRequestURI() + '?' + request.getQueryString() + '|' + wrapper.getContentType() + '|' + etag;
+		byte[] body = pages.get(key, ignored -> gzip(wrapper.getContentAsByteArray()));
+		
+		response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+		response.setHeader(HttpHeaders.ETAG, etag.startsWith("W/") ? etag : "W/" + etag);
+		response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+	
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, pages, "compressed-pages");
+	}
+	
+	private static byte[] gzip(byte[] content) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 4);
+		try(GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+			gzip.write(content);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return output.toByteArray();
+	}
+}
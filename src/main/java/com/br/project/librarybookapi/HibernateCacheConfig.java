@@ -0,0 +1,107 @@
+package com.br.project.librarybookapi;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache de segundo nível do Hibernate (JCache sobre Caffeine) para a entidade
+ * Book e para a consulta por isbn. As regiões são criadas aqui, com tamanho e
+ * validade vindos das propriedades library.cache.*, e o Hibernate falha na
+ * subida se precisar de alguma região não configurada.
+ * 
+ * Alterações e exclusões feitas pelo Hibernate atualizam a região "book"; a
+ * região das consultas é invalidada pela região de timestamps sempre que a
+ * tabela book muda.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.cache.hibernate.enabled", havingValue = "true", matchIfMissing = true)
+public class HibernateCacheConfig {
+
+	public static final String BOOK_REGION = "book";
+	
+	public static final String BOOK_BY_ISBN_REGION = "book-by-isbn";
+	
+	static final String DEFAULT_QUERY_REGION = "default-query-results-region";
+	
+	static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+	
+	/**
+	 * Um gerenciador por contexto (URI própria), para que contextos distintos
+	 * na mesma JVM, como nos testes, não disputem as mesmas regiões.
+	 */
+	@Bean(destroyMethod = "close")
+	public CacheManager hibernateCacheManager(
+			@Value("${library.cache.book.maximum-size:200000}") long bookMaximumSize,
+			@Value("${library.cache.book.time-to-live:1h}") Duration bookTimeToLive,
+			@Value("${library.cache.book-by-isbn.maximum-size:200000}") long isbnMaximumSize,
+			@Value("${library.cache.book-by-isbn.time-to-live:10m}") Duration isbnTimeToLive) {
+		CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+		CacheManager cacheManager = provider.getCacheManager(
+				URI.create("library-book-api:hibernate:" + UUID.randomUUID()), provider.getDefaultClassLoader());
+		cacheManager.createCache(BOOK_REGION, region(OptionalLong.of(bookMaximumSize), OptionalLong.of(bookTimeToLive.toNanos())));
+		cacheManager.createCache(BOOK_BY_ISBN_REGION, region(OptionalLong.of(isbnMaximumSize), OptionalLong.of(isbnTimeToLive.toNanos())));
+		cacheManager.createCache(DEFAULT_QUERY_REGION, region(OptionalLong.of(1000), OptionalLong.of(isbnTimeToLive.toNanos())));
+		// Os timestamps não podem expirar antes dos resultados de consulta que validam.
+		cacheManager.createCache(TIMESTAMPS_REGION, region(OptionalLong.empty(), OptionalLong.empty()));
+		return cacheManager;
+	}
+	
+	@Bean
+	public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+		return properties -> {
+			properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+			properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+			properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+			properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+			properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+		};
+	}
+	
+	/**
+	 * Publica tamanho, acertos, faltas e expulsões de cada região nas métricas
+	 * cache.* do actuator, com a tag cache igual ao nome da região.
+	 */
+	@Bean
+	public MeterBinder hibernateCacheMetrics(CacheManager hibernateCacheManager) {
+		return registry -> {
+			for(String name : hibernateCacheManager.getCacheNames()) {
+				Cache<?, ?> cache = hibernateCacheManager.getCache(name).unwrap(Cache.class);
+				CaffeineCacheMetrics.monitor(registry, cache, name);
+			}
+		};
+	}
+	
+	/**
+	 * Guarda por referência: o Hibernate já armazena o estado desmontado da
+	 * entidade, e a cópia por serialização do JCache só custaria CPU.
+	 */
+	private static CaffeineConfiguration<Object, Object> region(OptionalLong maximumSize, OptionalLong expireAfterWrite) {
+		CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+		configuration.setStoreByValue(false);
+		configuration.setMaximumSize(maximumSize);
+		configuration.setExpireAfterWrite(expireAfterWrite);
+		configuration.setNativeStatisticsEnabled(true);
+		return configuration;
+	}
+}
@@ -1,9 +1,7 @@
 package com.br.project.librarybookapi;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
@@ -11,11 +9,6 @@ import org.springframework.scheduling.annotation.Scheduled;
 @EnableScheduling
 public class LibraryBookApiApplication {
 
-	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
-	}
-	
 	public static void main(String[] args) {
 		SpringApplication.run(LibraryBookApiApplication.class, args);
 	}
@@ -0,0 +1,49 @@
+package com.br.project.librarybookapi;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mede cada método de BookService, LoanService e EmailService no timer
+ * library.service, com as tags class, method e exception. Os repositórios já
+ * são medidos pelo Spring Boot em spring.data.repository.invocations e os
+ * controllers em http.server.requests; os histogramas de percentis dos três
+ * são ligados em application.properties.
+ */
+@Aspect
+@Component
+public class ServiceMetricsAspect {
+
+	public static final String METRIC = "library.service";
+	
+	private final MeterRegistry registry;
+	
+	public ServiceMetricsAspect(MeterRegistry registry) {
+		this.registry = registry;
+	}
+	
+	@Around("execution(* com.br.project.librarybookapi.service.BookService.*(..))"
+			+ " || execution(* com.br.project.librarybookapi.service.LoanService.*(..))"
+			+ " || execution(* com.br.project.librarybookapi.service.EmailService.*(..))")
+	public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+		Timer.Sample sample = Timer.start(registry);
+		String exception = "none";
+		try {
+			return joinPoint.proceed();
+		} catch (Throwable e) {
+			exception = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			sample.stop(Timer.builder(METRIC)
+					.tag("class", joinPoint.getTarget().getClass().getSimpleName())
+					.tag("method", joinPoint.getSignature().getName())
+					.tag("exception", exception)
+					.register(registry));
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.br.project.librarybookapi;
+
+/**
+ * Balde de tokens de um cliente: até capacity requisições seguidas e depois
+ * tokensPerSecond por segundo. Os tempos são de System.nanoTime e vêm de
+ * quem chama, o que deixa os testes determinísticos.
+ */
+final class TokenBucket {
+
+	private final double capacity;
+	private final double tokensPerNano;
+	private double tokens;
+	private long refilledAt;
+	
+	TokenBucket(double capacity, double tokensPerSecond, long now) {
+		this.capacity = capacity;
+		this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+		this.tokens = capacity;
+		this.refilledAt = now;
+	}
+	
+	/**
+	 * @return 0 quando o token foi consumido; senão, em quantos nanossegundos
+	 *         haverá um token disponível
+	 */
+	synchronized long tryConsume(long now) {
+		tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+		refilledAt = now;
+		if(tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		return (long) Math.ceil((1 - tokens) / tokensPerNano);
+	}
+}
@@ -0,0 +1,36 @@
+package com.br.project.librarybookapi;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Respostas escritas pelo Jackson podem sair em JSON, CBOR ou Smile conforme
+ * o Accept (ver {@link BinaryFormatsConfig}); o Vary: Accept impede que um
+ * cache compartilhado entregue um formato a quem pediu outro.
+ */
+@RestControllerAdvice
+public class VaryByAcceptAdvice implements ResponseBodyAdvice<Object> {
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return AbstractJackson2HttpMessageConverter.class.isAssignableFrom(converterType);
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+			ServerHttpResponse response) {
+		HttpHeaders headers = response.getHeaders();
+		if(!headers.getVary().contains(HttpHeaders.ACCEPT)) {
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		}
+		return body;
+	}
+}
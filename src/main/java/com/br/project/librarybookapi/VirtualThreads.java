@@ -0,0 +1,51 @@
+package com.br.project.librarybookapi;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Acesso às threads virtuais do Java 21. O projeto compila para Java 8, então
+ * a API é chamada por reflexão e só quando o modo virtual está ligado.
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+	
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * @return fábrica de threads virtuais nomeadas prefix0, prefix1, ...
+	 */
+	public static ThreadFactory factory(String prefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			return (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Threads virtuais exigem Java 21 ou superior", e);
+		}
+	}
+	
+	/**
+	 * @return executor que cria uma thread virtual por tarefa
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		try {
+			Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) method.invoke(null, factory(prefix));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Threads virtuais exigem Java 21 ou superior", e);
+		}
+	}
+}
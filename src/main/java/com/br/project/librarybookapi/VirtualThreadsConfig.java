@@ -0,0 +1,49 @@
+package com.br.project.librarybookapi;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.task.TaskExecutorCustomizer;
+import org.springframework.boot.task.TaskSchedulerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Modo opcional (library.threads.virtual=true, Java 21) em que as requisições
+ * do Tomcat, as tarefas @Scheduled, entre elas o envio de e-mails da caixa de
+ * saída, e o executor de tarefas rodam em threads virtuais. Como quase todo o
+ * trabalho é JDBC e SMTP bloqueantes, a thread virtual é liberada durante a
+ * espera e o número de requisições em andamento deixa de ser limitado por
+ * server.tomcat.threads.max.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.threads.virtual", havingValue = "true")
+public class VirtualThreadsConfig {
+
+	public VirtualThreadsConfig() {
+		if(!VirtualThreads.isSupported()) {
+			throw new IllegalStateException("library.threads.virtual=true exige Java 21 ou superior");
+		}
+	}
+	
+	/**
+	 * O executor não é exposto como bean: um Executor no contexto faria o
+	 * Spring Boot deixar de criar o applicationTaskExecutor.
+	 */
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("http-vt-");
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+	
+	@Bean
+	public TaskSchedulerCustomizer virtualThreadTaskSchedulerCustomizer() {
+		return scheduler -> scheduler.setThreadFactory(VirtualThreads.factory("scheduling-vt-"));
+	}
+	
+	@Bean
+	public TaskExecutorCustomizer virtualThreadTaskExecutorCustomizer() {
+		return executor -> executor.setThreadFactory(VirtualThreads.factory("task-vt-"));
+	}
+}
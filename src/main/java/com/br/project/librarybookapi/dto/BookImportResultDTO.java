@@ -0,0 +1,20 @@
+package com.br.project.librarybookapi.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportResultDTO {
+	private long imported;
+	private long rejected;
+	@Builder.Default
+	private List<BookImportErrorDTO> errors = new ArrayList<>();
+}
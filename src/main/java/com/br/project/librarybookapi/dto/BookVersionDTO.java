@@ -0,0 +1,15 @@
+package com.br.project.librarybookapi.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookVersionDTO {
+	private Long version;
+	private Instant lastModified;
+}
@@ -0,0 +1,20 @@
+package com.br.project.librarybookapi.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkReturnDTO {
+	@Builder.Default
+	private List<Long> ids = new ArrayList<>();
+	@Builder.Default
+	private List<String> isbns = new ArrayList<>();
+}
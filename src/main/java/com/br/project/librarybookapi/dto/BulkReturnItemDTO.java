@@ -0,0 +1,23 @@
+package com.br.project.librarybookapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkReturnItemDTO {
+	
+	public enum Status {
+		RETURNED,
+		ALREADY_RETURNED,
+		NOT_FOUND
+	}
+	
+	private Long loanId;
+	private String isbn;
+	private Status status;
+}
@@ -0,0 +1,21 @@
+package com.br.project.librarybookapi.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkReturnResultDTO {
+	private long returned;
+	private long alreadyReturned;
+	private long notFound;
+	@Builder.Default
+	private List<BulkReturnItemDTO> items = new ArrayList<>();
+}
@@ -0,0 +1,15 @@
+package com.br.project.librarybookapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerLateLoanCountDTO {
+	private String customerEmail;
+	private Long loans;
+}
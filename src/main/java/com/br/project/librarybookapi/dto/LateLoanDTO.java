@@ -0,0 +1,21 @@
+package com.br.project.librarybookapi.dto;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LateLoanDTO {
+	private Long loanId;
+	private String customer;
+	private String customerEmail;
+	private LocalDate loanDate;
+	private String isbn;
+	private String title;
+}
@@ -0,0 +1,17 @@
+package com.br.project.librarybookapi.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanStateDTO {
+	private Long loanId;
+	private Long bookId;
+	private String isbn;
+	private Boolean returned;
+}
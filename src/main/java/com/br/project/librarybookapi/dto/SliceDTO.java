@@ -0,0 +1,19 @@
+package com.br.project.librarybookapi.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SliceDTO<T> {
+	private List<T> content;
+	private int number;
+	private int size;
+	private boolean hasNext;
+}
@@ -1,7 +1,9 @@
 package com.br.project.librarybookapi.model;
 
+import java.time.Instant;
 import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -9,7 +11,16 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import com.br.project.librarybookapi.HibernateCacheConfig;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -22,16 +33,31 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @Entity
 @Table
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.BOOK_REGION)
 public class Book {
 	@Id
 	@Column
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	private Long id;
 	
 	private String title;
 	private String author;
 	private String isbn;
 	
+	@Version
+	private Long version;
+	
+	@Column(name = "last_modified")
+	private Instant lastModified;
+	
 	@OneToMany(mappedBy = "book", fetch = FetchType.LAZY)
 	private List<Loan> loans;
+	
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		lastModified = Instant.now();
+	}
 }
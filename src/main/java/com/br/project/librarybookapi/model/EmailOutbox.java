@@ -0,0 +1,64 @@
+package com.br.project.librarybookapi.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "email_outbox")
+public class EmailOutbox {
+	@Id
+	@Column
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	@Lob
+	@Column
+	private String recipients;
+	
+	@Column
+	private String subject;
+	
+	@Lob
+	@Column
+	private String text;
+	
+	@Column
+	@Enumerated(EnumType.STRING)
+	private EmailStatus status;
+	
+	@Column
+	private int attempts;
+	
+	@Column
+	private LocalDateTime nextAttemptAt;
+	
+	@Column
+	private String claimToken;
+	
+	@Column(length = 1000)
+	private String lastError;
+	
+	@Column
+	private LocalDateTime createdAt;
+	
+	@Column
+	private LocalDateTime sentAt;
+}
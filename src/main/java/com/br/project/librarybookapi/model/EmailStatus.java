@@ -0,0 +1,7 @@
+package com.br.project.librarybookapi.model;
+
+public enum EmailStatus {
+	PENDING,
+	SENT,
+	DEAD
+}
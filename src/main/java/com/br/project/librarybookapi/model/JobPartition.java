@@ -0,0 +1,65 @@
+package com.br.project.librarybookapi.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "job_partition")
+public class JobPartition {
+	@Id
+	@Column
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	@Column
+	private String jobName;
+	
+	@Column
+	private LocalDate runDate;
+	
+	@Column
+	private String fromKey;
+	
+	@Column
+	private String toKey;
+	
+	@Column
+	@Enumerated(EnumType.STRING)
+	private JobPartitionStatus status;
+	
+	@Column
+	private String owner;
+	
+	@Column
+	private LocalDateTime leaseUntil;
+	
+	@Column
+	private int attempts;
+	
+	@Column
+	private String checkpointKey;
+	
+	@Column
+	private LocalDateTime completedAt;
+	
+	@Column(length = 1000)
+	private String lastError;
+}
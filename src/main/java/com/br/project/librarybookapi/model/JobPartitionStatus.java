@@ -0,0 +1,8 @@
+package com.br.project.librarybookapi.model;
+
+public enum JobPartitionStatus {
+	PENDING,
+	RUNNING,
+	DONE,
+	FAILED
+}
@@ -9,6 +9,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
 import lombok.AllArgsConstructor;
@@ -41,6 +43,21 @@ public class Loan {
 	@ManyToOne
 	private Book book;
 	
-	@Column
-	private Boolean returned;
+	@Builder.Default
+	@Column(nullable = false)
+	private Boolean returned = false;
+	
+	/**
+	 * Id do livro enquanto o empréstimo está em aberto, nulo depois da
+	 * devolução. Tem índice único: a base recusa um segundo empréstimo em
+	 * aberto do mesmo livro.
+	 */
+	@Column(name = "open_book_id")
+	private Long openBookId;
+	
+	@PrePersist
+	@PreUpdate
+	void markOpenBook() {
+		openBookId = book == null || Boolean.TRUE.equals(returned) ? null : book.getId();
+	}
 }
@@ -1,15 +1,52 @@
 package com.br.project.librarybookapi.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.br.project.librarybookapi.HibernateCacheConfig;
+import com.br.project.librarybookapi.dto.BookVersionDTO;
 import com.br.project.librarybookapi.model.Book;
 
-public interface BookRepository extends JpaRepository<Book, Long>{
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom{
 
 	boolean existsByIsbn(String isbn);
 
+	@QueryHints({
+		@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+		@QueryHint(name = "org.hibernate.cacheRegion", value = HibernateCacheConfig.BOOK_BY_ISBN_REGION)
+	})
 	Optional<Book> findByIsbn(String isbn);
 	
+	@Query(value = "select new com.br.project.librarybookapi.dto.BookVersionDTO(b.version, b.lastModified) from Book b where b.id = :id")
+	Optional<BookVersionDTO> findVersionById(@Param("id") Long id);
+	
+	@Query(value = "select b.isbn from Book b where b.isbn in :isbns")
+	List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+	
+	/**
+	 * Livros incluídos ou alterados a partir de since, em ordem de id, para a
+	 * atualização incremental do índice de busca.
+	 */
+	@Query(value = "select b from Book b where b.lastModified >= :since and b.id > :afterId order by b.id")
+	Slice<Book> findModifiedAfter(@Param("since") Instant since, @Param("afterId") Long afterId, Pageable pageable);
+	
+	@Query(value = "select b from Book b where "
+			+ "(:title is null or lower(b.title) like lower(concat('%', :title, '%'))) "
+			+ "and (:author is null or lower(b.author) like lower(concat('%', :author, '%'))) "
+			+ "and (:isbn is null or lower(b.isbn) like lower(concat('%', :isbn, '%'))) "
+			+ "and (:afterId is null or b.id > :afterId) order by b.id")
+	Slice<Book> findAfter(@Param("title") String title, @Param("author") String author, @Param("isbn") String isbn,
+			@Param("afterId") Long afterId, Pageable pageable);
+	
 }
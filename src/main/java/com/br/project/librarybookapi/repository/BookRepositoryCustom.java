@@ -0,0 +1,25 @@
+package com.br.project.librarybookapi.repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import com.br.project.librarybookapi.model.Book;
+
+public interface BookRepositoryCustom {
+
+	Slice<Book> findSlice(Example<Book> example, Pageable pageable);
+	
+	/**
+	 * Altera título e autor em um único UPDATE, incrementando a versão. Com
+	 * expectedVersion, só altera se o livro ainda estiver nessa versão.
+	 * 
+	 * @return isbn gravado do livro alterado, vazio quando nenhum livro foi
+	 *         alterado
+	 */
+	Optional<String> updateDetails(Long id, String title, String author, Long expectedVersion, Instant now);
+	
+}
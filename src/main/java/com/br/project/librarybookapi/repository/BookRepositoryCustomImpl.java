@@ -0,0 +1,107 @@
+package com.br.project.librarybookapi.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.query.NativeQuery;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.br.project.librarybookapi.model.Book;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+	
+	/**
+	 * Mesma consulta do findAll(Example, Pageable), mas lê um registro a mais
+	 * para saber se há próxima página em vez de executar o count.
+	 */
+	@Override
+	public Slice<Book> findSlice(Example<Book> example, Pageable pageable) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = builder.createQuery(Book.class);
+		Root<Book> root = query.from(Book.class);
+		
+		Predicate predicate = QueryByExamplePredicateBuilder.getPredicate(root, builder, example);
+		if(predicate != null) {
+			query.where(predicate);
+		}
+		query.orderBy(QueryUtils.toOrders(pageable.getSortOr(Sort.by("id")), root, builder));
+		
+		TypedQuery<Book> typedQuery = entityManager.createQuery(query);
+		if(pageable.isUnpaged()) {
+			return new SliceImpl<>(typedQuery.getResultList(), pageable, false);
+		}
+		typedQuery.setFirstResult((int) pageable.getOffset());
+		typedQuery.setMaxResults(pageable.getPageSize() + 1);
+		
+		List<Book> content = typedQuery.getResultList();
+		boolean hasNext = content.size() > pageable.getPageSize();
+		return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+	}
+	
+	/**
+	 * UPDATE nativo que declara a tabela book como espaço de consulta, de
+	 * modo que o Hibernate invalida as consultas em cache que a leem. Só o
+	 * livro alterado sai do contexto de persistência, e ele sai de novo do
+	 * cache de segundo nível depois do commit, para que uma leitura
+	 * concorrente não devolva ao cache a versão antiga. O isbn, que o UPDATE
+	 * não altera, é lido em seguida pela chave primária para que a resposta
+	 * traga o valor gravado.
+	 */
+	@Override
+	@Transactional
+	public Optional<String> updateDetails(Long id, String title, String author, Long expectedVersion, Instant now) {
+		entityManager.flush();
+		NativeQuery<?> query = entityManager.createNativeQuery("update book set title = :title, author = :author, "
+				+ "version = version + 1, last_modified = :now where id = :id"
+				+ (expectedVersion == null ? "" : " and version = :expectedVersion"))
+				.unwrap(NativeQuery.class)
+				.addSynchronizedEntityClass(Book.class);
+		query.setParameter("title", title)
+			.setParameter("author", author)
+			.setParameter("now", now)
+			.setParameter("id", id);
+		if(expectedVersion != null) {
+			query.setParameter("expectedVersion", expectedVersion);
+		}
+		int updated = query.executeUpdate();
+		entityManager.detach(entityManager.getReference(Book.class, id));
+		if(updated == 0) {
+			return Optional.empty();
+		}
+		Cache cache = entityManager.getEntityManagerFactory().getCache();
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					cache.evict(Book.class, id);
+				}
+			});
+		}
+		return Optional.of(entityManager.createQuery("select b.isbn from Book b where b.id = :id", String.class)
+				.setParameter("id", id)
+				.getSingleResult());
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.br.project.librarybookapi.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.project.librarybookapi.model.EmailOutbox;
+import com.br.project.librarybookapi.model.EmailStatus;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long>{
+
+	@Query(value = "select e.id from EmailOutbox e where e.status = :status and e.nextAttemptAt <= :now order by e.id")
+	List<Long> findDueIds(@Param("status") EmailStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+	
+	/**
+	 * Reserva as mensagens para um relay adiando a próxima tentativa até o fim
+	 * do prazo; mensagens já reservadas por outro relay ficam de fora.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update EmailOutbox e set e.claimToken = :token, e.nextAttemptAt = :leaseUntil "
+			+ "where e.id in :ids and e.status = :status and e.nextAttemptAt <= :now")
+	int claim(@Param("ids") List<Long> ids, @Param("token") String token, @Param("status") EmailStatus status,
+			@Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+	
+	List<EmailOutbox> findByClaimTokenOrderById(String claimToken);
+	
+	long countByStatus(EmailStatus status);
+}
@@ -0,0 +1,81 @@
+package com.br.project.librarybookapi.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.project.librarybookapi.model.JobPartition;
+import com.br.project.librarybookapi.model.JobPartitionStatus;
+
+public interface JobPartitionRepository extends JpaRepository<JobPartition, Long>{
+
+	/**
+	 * Partições que podem ser reservadas: pendentes ou em execução por uma
+	 * réplica cujo prazo já venceu.
+	 */
+	@Query(value = "select p.id from JobPartition p where p.jobName = :jobName and p.runDate = :runDate "
+			+ "and (p.status = com.br.project.librarybookapi.model.JobPartitionStatus.PENDING "
+			+ "or (p.status = com.br.project.librarybookapi.model.JobPartitionStatus.RUNNING and p.leaseUntil < :now)) "
+			+ "order by p.id")
+	List<Long> findClaimableIds(@Param("jobName") String jobName, @Param("runDate") LocalDate runDate,
+			@Param("now") LocalDateTime now, Pageable pageable);
+	
+	/**
+	 * Reserva a partição só se ela ainda puder ser reservada; quando duas
+	 * réplicas disputam a mesma partição, apenas uma recebe 1.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update JobPartition p set p.status = com.br.project.librarybookapi.model.JobPartitionStatus.RUNNING, "
+			+ "p.owner = :owner, p.leaseUntil = :leaseUntil, p.attempts = p.attempts + 1 "
+			+ "where p.id = :id and (p.status = com.br.project.librarybookapi.model.JobPartitionStatus.PENDING "
+			+ "or (p.status = com.br.project.librarybookapi.model.JobPartitionStatus.RUNNING and p.leaseUntil < :now))")
+	int claim(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+			@Param("leaseUntil") LocalDateTime leaseUntil);
+	
+	/**
+	 * Renova o prazo da partição e grava até onde ela foi processada, se ela
+	 * ainda pertence a quem a reservou. Roda na transação de cada bloco: se
+	 * outra réplica assumiu a partição, o retorno 0 desfaz o bloco.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update JobPartition p set p.leaseUntil = :leaseUntil, p.checkpointKey = :checkpointKey "
+			+ "where p.id = :id and p.owner = :owner and p.status = com.br.project.librarybookapi.model.JobPartitionStatus.RUNNING")
+	int renew(@Param("id") Long id, @Param("owner") String owner, @Param("checkpointKey") String checkpointKey,
+			@Param("leaseUntil") LocalDateTime leaseUntil);
+	
+	/**
+	 * Conclui a partição se ela ainda pertence a quem a reservou, depois que
+	 * o último bloco foi gravado.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update JobPartition p set p.status = com.br.project.librarybookapi.model.JobPartitionStatus.DONE, "
+			+ "p.completedAt = :now, p.leaseUntil = null "
+			+ "where p.id = :id and p.owner = :owner and p.status = com.br.project.librarybookapi.model.JobPartitionStatus.RUNNING")
+	int complete(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now);
+	
+	/**
+	 * Devolve a partição que falhou para que outra tentativa a reserve, ou a
+	 * marca como FAILED quando as tentativas acabaram.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update JobPartition p set p.status = :status, p.leaseUntil = null, p.lastError = :error "
+			+ "where p.id = :id and p.owner = :owner and p.status = com.br.project.librarybookapi.model.JobPartitionStatus.RUNNING")
+	int release(@Param("id") Long id, @Param("owner") String owner, @Param("status") JobPartitionStatus status,
+			@Param("error") String error);
+	
+	long countByJobNameAndRunDateAndStatusIn(String jobName, LocalDate runDate, Collection<JobPartitionStatus> statuses);
+	
+	List<JobPartition> findByJobNameAndRunDateOrderById(String jobName, LocalDate runDate);
+}
@@ -0,0 +1,12 @@
+package com.br.project.librarybookapi.repository;
+
+import java.time.LocalDate;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.br.project.librarybookapi.model.JobRun;
+
+public interface JobRunRepository extends JpaRepository<JobRun, Long>{
+
+	boolean existsByJobNameAndRunDate(String jobName, LocalDate runDate);
+}
@@ -1,29 +1,130 @@
 package com.br.project.librarybookapi.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
+import javax.persistence.QueryHint;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.br.project.librarybookapi.dto.CustomerLateLoanCountDTO;
+import com.br.project.librarybookapi.dto.LateLoanDTO;
+import com.br.project.librarybookapi.dto.LoanStateDTO;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
 
 public interface LoanRepository extends JpaRepository<Loan, Long>{
 
 	@Query(value = "select case when (count(l.id) > 0) then true else false end from Loan l where l.book =:book "
-			+ "and (l.returned is null or l.returned is false)")
+			+ "and l.returned = false")
 	boolean existsByBookAndNotReturned(@Param("book") Book book);
 
-	@Query(value = "select l from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer")
+	@Query(value = "select distinct l.book.id from Loan l where l.returned = false")
+	List<Long> findBookIdsNotReturned();
+
+	/**
+	 * @return pares (id do empréstimo, id do livro) dos empréstimos em aberto
+	 */
+	@Query(value = "select l.id, l.book.id from Loan l where l.returned = false")
+	List<Object[]> findOpenLoanBookIds();
+
+	@Query(value = "select l from Loan as l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer",
+			countQuery = "select count(l) from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer")
 	Page<Loan> findBookIsbnOrCustomer(String isbn, String customer, Pageable pageRequest);
 
-	Page<Loan> findByBook(Book book, Pageable pageable);
+	@Query(value = "select l from Loan as l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer")
+	Slice<Loan> findSliceBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageRequest);
+
+	@Query(value = "select count(l) from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer")
+	long countBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer);
+
+	@Query(value = "select l from Loan as l join fetch l.book as b where (b.isbn = :isbn or l.customer = :customer) "
+			+ "and (:afterId is null or l.id > :afterId) order by l.id")
+	Slice<Loan> findBookIsbnOrCustomerAfter(@Param("isbn") String isbn, @Param("customer") String customer,
+			@Param("afterId") Long afterId, Pageable pageable);
+
+	@Query(value = "select l from Loan as l join fetch l.book as b where l.book = :book",
+			countQuery = "select count(l) from Loan as l where l.book = :book")
+	Page<Loan> findByBook(@Param("book") Book book, Pageable pageable);
+	
+	@Query(value = "select l from Loan as l join fetch l.book as b where l.book = :book")
+	Slice<Loan> findSliceByBook(@Param("book") Book book, Pageable pageable);
+	
+	long countByBook(Book book);
+	
+	@Query(value = "select l from Loan as l join fetch l.book as b where l.book = :book and (:afterId is null or l.id > :afterId) order by l.id")
+	Slice<Loan> findByBookAfter(@Param("book") Book book, @Param("afterId") Long afterId, Pageable pageable);
 
-	@Query(value = "select l from Loan as l where l.loanDate <= :threeDaysAgo and (l.returned is null or l.returned is false)")
+	@Query(value = "select l from Loan as l where l.loanDate <= :threeDaysAgo and l.returned = false")
 	List<Loan> findByLoanDateLessThanNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
 	
+	/**
+	 * Empréstimos não devolvidos até threeDaysAgo, ordenados por (email, id) para que
+	 * os empréstimos de um cliente cheguem juntos; a página seguinte começa
+	 * depois do último par (afterEmail, afterId). toEmail, quando informado,
+	 * limita a busca aos emails menores que ele.
+	 */
+	@Transactional(readOnly = true)
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+	@Query(value = "select new com.br.project.librarybookapi.dto.LateLoanDTO(l.id, l.customer, l.customerEmail, l.loanDate, b.isbn, b.title) "
+			+ "from Loan as l join l.book as b where l.loanDate <= :threeDaysAgo and l.returned = false "
+			+ "and l.customerEmail is not null "
+			+ "and (l.customerEmail > :afterEmail or (l.customerEmail = :afterEmail and l.id > :afterId)) "
+			+ "and (:toEmail is null or l.customerEmail < :toEmail) "
+			+ "order by l.customerEmail, l.id")
+	List<LateLoanDTO> findLateLoansByCustomerAfter(@Param("threeDaysAgo") LocalDate threeDaysAgo,
+			@Param("afterEmail") String afterEmail, @Param("afterId") Long afterId, @Param("toEmail") String toEmail,
+			Pageable pageable);
+	
+	@Transactional(readOnly = true)
+	@Query(value = "select new com.br.project.librarybookapi.dto.CustomerLateLoanCountDTO(l.customerEmail, count(l.id)) "
+			+ "from Loan as l where l.loanDate <= :threeDaysAgo and l.returned = false "
+			+ "and l.customerEmail > :afterEmail group by l.customerEmail order by l.customerEmail")
+	List<CustomerLateLoanCountDTO> findLateLoanCountsByCustomerAfter(@Param("threeDaysAgo") LocalDate threeDaysAgo,
+			@Param("afterEmail") String afterEmail, Pageable pageable);
+	
+	/**
+	 * Devolução em um único UPDATE, sem carregar o empréstimo. open_book_id é
+	 * mantido aqui porque os callbacks da entidade não rodam em updates em lote.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update Loan l set l.returned = true, l.openBookId = null where l.id = :id")
+	int markReturned(@Param("id") Long id);
+	
+	/**
+	 * Reabre o empréstimo; falha no índice único de open_book_id se o livro
+	 * tiver outro empréstimo em aberto.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update Loan l set l.returned = false, l.openBookId = l.book.id where l.id = :id")
+	int markNotReturned(@Param("id") Long id);
+	
+	@Query(value = "select new com.br.project.librarybookapi.dto.LoanStateDTO(l.id, b.id, b.isbn, l.returned) "
+			+ "from Loan as l join l.book as b where l.id in :ids")
+	List<LoanStateDTO> findStatesByIds(@Param("ids") Collection<Long> ids);
+	
+	@Query(value = "select new com.br.project.librarybookapi.dto.LoanStateDTO(l.id, b.id, b.isbn, l.returned) "
+			+ "from Loan as l join l.book as b where b.isbn in :isbns and l.returned = false")
+	List<LoanStateDTO> findOpenStatesByIsbns(@Param("isbns") Collection<String> isbns);
+	
+	/**
+	 * Devolução em lote, em um único UPDATE; empréstimos já devolvidos não
+	 * são contados.
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query(value = "update Loan l set l.returned = true, l.openBookId = null where l.id in :ids and l.returned = false")
+	int markAllReturned(@Param("ids") Collection<Long> ids);
+	
 }
@@ -1,31 +1,43 @@
 package com.br.project.librarybookapi.resource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 import javax.validation.Valid;
 
-import org.modelmapper.ModelMapper;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.BookImportResultDTO;
+import com.br.project.librarybookapi.dto.BookVersionDTO;
+import com.br.project.librarybookapi.dto.CursorPageDTO;
 import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.dto.SliceDTO;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.service.BookImportService;
 import com.br.project.librarybookapi.service.BookService;
 import com.br.project.librarybookapi.service.LoanService;
 
@@ -40,22 +52,41 @@ public class BookController {
 	
 	private final LoanService loanService;
 	
-	private final ModelMapper modelMapper;
+	private final BookImportService importService;
 	
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
 	public BookDTO create(@RequestBody @Valid BookDTO dto) {
-		Book entity = Book.builder().author(dto.getAuthor()).title(dto.getTitle()).isbn(dto.getIsbn()).build();
-		entity = service.save(entity);
-		return BookDTO.builder().id(entity.getId()).author(entity.getAuthor()).title(entity.getTitle()).isbn(entity.getIsbn()).build();
+		Book entity = service.save(DtoMapper.toEntity(dto));
+		return DtoMapper.toDTO(entity);
 	}
 	
 	
+	@PostMapping(value = "import", consumes = {"text/csv", "application/x-ndjson"})
+	public BookImportResultDTO importBooks(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+		BookImportService.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.valueOf("text/csv"))
+				? BookImportService.Format.CSV
+				: BookImportService.Format.NDJSON;
+		return importService.importBooks(body, format);
+	}
+	
+	/**
+	 * Com If-None-Match, consulta só a versão do livro e responde 304 sem
+	 * carregar a entidade quando o ETag do cliente ainda vale.
+	 */
 	@GetMapping("{id}")
-	public BookDTO get(@PathVariable Long id) {
-		
-		return service.getById(id).map(book -> BookDTO.builder().id(book.getId()).author(book.getAuthor()).title(book.getTitle()).isbn(book.getIsbn()).build())
-				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	public ResponseEntity<BookDTO> get(@PathVariable Long id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		MediaType representation = ETags.representation(accept);
+		if(ifNoneMatch != null) {
+			Optional<BookVersionDTO> current = service.getVersion(id);
+			if(current.isPresent() && ETags.noneMatch(ifNoneMatch, ETags.of(current.get().getVersion(), representation))) {
+				return versioned(ResponseEntity.status(HttpStatus.NOT_MODIFIED), current.get().getVersion(), current.get().getLastModified(), representation).build();
+			}
+		}
+		Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		return versioned(ResponseEntity.ok(), book.getVersion(), book.getLastModified(), representation).body(DtoMapper.toDTO(book));
 	}
 	
 	@DeleteMapping("{id}")
@@ -66,46 +97,116 @@ public class BookController {
 		service.delete(book);
 	}
 	
+	/**
+	 * Altera o livro com um único UPDATE. Com If-Match, a versão informada
+	 * entra na condição do UPDATE; se nada for alterado, 412 quando o livro
+	 * existe em outra versão e 404 quando não existe. O corpo da resposta traz
+	 * título e autor da requisição e o isbn gravado, que não é alterado; o
+	 * ETag da nova versão só vai quando a versão anterior foi informada.
+	 */
 	@PutMapping("{id}")
-	@ResponseStatus(HttpStatus.OK)
-	public BookDTO update(@PathVariable Long id, @RequestBody @Valid BookDTO dto) {
-		return service.getById(id).map( book -> {
-				
-				book.setAuthor(dto.getAuthor());
-				book.setTitle(dto.getTitle());
-				book = service.update(book);
-				return BookDTO.builder().id(book.getId()).author(book.getAuthor()).title(book.getTitle()).isbn(book.getIsbn()).build();
-				
-		}).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-		
+	public ResponseEntity<BookDTO> update(@PathVariable Long id, @RequestBody @Valid BookDTO dto,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		Long expectedVersion = ETags.version(ifMatch);
+		Optional<Book> updated = service.updateDetails(id, dto.getTitle(), dto.getAuthor(), expectedVersion);
+		if(!updated.isPresent()) {
+			if(expectedVersion != null && service.getVersion(id).isPresent()) {
+				throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "O livro foi alterado por outra requisição");
+			}
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+		}
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT);
+		if(expectedVersion != null) {
+			response.eTag(ETags.of(expectedVersion + 1, ETags.representation(accept)));
+		}
+		return response.body(DtoMapper.toDTO(updated.get()));
 	}
 	
+	/*
+	 * As listagens levam só ETag: um Last-Modified calculado a partir dos
+	 * livros da página não percebe exclusões e geraria 304 indevidos. O 304
+	 * em si é resolvido pelo Spring a partir do ETag da resposta, antes de
+	 * serializar o corpo; por isso o Vary: Accept vai já no ResponseEntity.
+	 */
+	
 	@GetMapping
-	public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
-		Book filter = Book.builder().author(dto.getAuthor()).title(dto.getTitle()).isbn(dto.getIsbn()).build();
+	public ResponseEntity<Page<BookDTO>> find(BookDTO dto, Pageable pageRequest,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		Book filter = DtoMapper.toEntity(dto);
 		Page<Book> result = service.find(filter, pageRequest);
-		List<BookDTO> lista = result.getContent()
-				.stream()
-				.map(entity -> BookDTO.builder().id(entity.getId()).author(entity.getAuthor()).title(entity.getTitle()).isbn(entity.getIsbn()).build())
-				.collect(Collectors.toList());
-		return new PageImpl<BookDTO>(lista, pageRequest, result.getTotalElements());
+		List<BookDTO> lista = DtoMapper.toBookDTOs(result.getContent());
+		return ResponseEntity.ok()
+				.varyBy(HttpHeaders.ACCEPT)
+				.eTag(ETags.of(result.getContent(), ETags.representation(accept), result.getNumber(), result.getSize(), result.getTotalElements()))
+				.body(new PageImpl<BookDTO>(lista, pageRequest, result.getTotalElements()));
+	}
+	
+	@GetMapping(params = {"count=false", "!cursor"})
+	public ResponseEntity<SliceDTO<BookDTO>> findSlice(BookDTO dto, Pageable pageRequest,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		Book filter = DtoMapper.toEntity(dto);
+		Slice<Book> result = service.findSlice(filter, pageRequest);
+		List<BookDTO> lista = DtoMapper.toBookDTOs(result.getContent());
+		return ResponseEntity.ok()
+				.varyBy(HttpHeaders.ACCEPT)
+				.eTag(ETags.of(result.getContent(), ETags.representation(accept), result.getNumber(), result.getSize(), result.hasNext()))
+				.body(SliceDTO.<BookDTO>builder().content(lista).number(result.getNumber()).size(result.getSize()).hasNext(result.hasNext()).build());
+	}
+	
+	@GetMapping(params = "cursor")
+	public ResponseEntity<CursorPageDTO<BookDTO>> findByCursor(BookDTO dto, @RequestParam String cursor, @RequestParam(defaultValue = "20") int size,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		Book filter = DtoMapper.toEntity(dto);
+		int pageSize = CursorToken.pageSize(size);
+		Slice<Book> result = service.findAfter(filter, CursorToken.decode(cursor), pageSize);
+		List<BookDTO> lista = DtoMapper.toBookDTOs(result.getContent());
+		String next = CursorToken.next(result, Book::getId);
+		return ResponseEntity.ok()
+				.varyBy(HttpHeaders.ACCEPT)
+				.eTag(ETags.of(result.getContent(), ETags.representation(accept), pageSize, next))
+				.body(CursorPageDTO.<BookDTO>builder().content(lista).size(pageSize).next(next).build());
 	}
 	
 	@GetMapping("{id}/loans")
 	public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable){
 		Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 		Page<Loan> result = loanService.getLoansByBook(book , pageable);
-		List<LoanDTO> lista = result.getContent()
-				.stream()
-				.map(loan -> {
-					Book loanBook = loan.getBook();
-					BookDTO bookDTO = modelMapper.map(loanBook, BookDTO.class);
-					LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-					loanDTO.setBook(bookDTO);
-					return loanDTO;
-				}).collect(Collectors.toList());
+		List<LoanDTO> lista = DtoMapper.toLoanDTOs(result.getContent());
 		
 		return new PageImpl<LoanDTO>(lista, pageable, result.getTotalElements());
 	}
 	
+	@GetMapping(value = "{id}/loans", params = {"count=false", "!cursor"})
+	public SliceDTO<LoanDTO> loansByBookSlice(@PathVariable Long id, Pageable pageable){
+		Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		Slice<Loan> result = loanService.getLoanSliceByBook(book, pageable);
+		List<LoanDTO> lista = DtoMapper.toLoanDTOs(result.getContent());
+		
+		return SliceDTO.<LoanDTO>builder().content(lista).number(result.getNumber()).size(result.getSize()).hasNext(result.hasNext()).build();
+	}
+	
+	@GetMapping(value = "{id}/loans", params = "cursor")
+	public CursorPageDTO<LoanDTO> loansByBookByCursor(@PathVariable Long id, @RequestParam String cursor, @RequestParam(defaultValue = "20") int size){
+		Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		int pageSize = CursorToken.pageSize(size);
+		Slice<Loan> result = loanService.getLoansByBookAfter(book, CursorToken.decode(cursor), pageSize);
+		List<LoanDTO> lista = DtoMapper.toLoanDTOs(result.getContent());
+		
+		return CursorPageDTO.<LoanDTO>builder().content(lista).size(pageSize).next(CursorToken.next(result, Loan::getId)).build();
+	}
+	
+	private static ResponseEntity.BodyBuilder versioned(ResponseEntity.BodyBuilder response, Long version, Instant lastModified,
+			MediaType representation) {
+		response.varyBy(HttpHeaders.ACCEPT);
+		String etag = ETags.of(version, representation);
+		if(etag != null) {
+			response.eTag(etag);
+		}
+		if(lastModified != null) {
+			response.lastModified(lastModified);
+		}
+		return response;
+	}
+	
 }
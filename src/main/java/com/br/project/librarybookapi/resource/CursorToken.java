@@ -0,0 +1,66 @@
+package com.br.project.librarybookapi.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.Slice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Token opaco da paginação por cursor. Guarda a chave de ordenação (o id)
+ * do último registro da página anterior.
+ */
+final class CursorToken {
+
+	private static final String PREFIX = "id:";
+	
+	static final int MAX_PAGE_SIZE = 2000;
+	
+	private CursorToken() {
+	}
+	
+	static String encode(Long lastId) {
+		if(lastId == null) {
+			return null;
+		}
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @return o id após o qual a próxima página começa, ou null para a primeira página
+	 */
+	static Long decode(String cursor) {
+		if(cursor == null || cursor.isEmpty()) {
+			return null;
+		}
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			if(!value.startsWith(PREFIX)) {
+				throw new IllegalArgumentException(value);
+			}
+			return Long.valueOf(value.substring(PREFIX.length()));
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+		}
+	}
+	
+	/**
+	 * @return o cursor da página seguinte, ou null quando esta é a última
+	 */
+	static <T> String next(Slice<T> slice, Function<T, Long> id) {
+		if(!slice.hasNext()) {
+			return null;
+		}
+		List<T> content = slice.getContent();
+		return encode(id.apply(content.get(content.size() - 1)));
+	}
+	
+	static int pageSize(int size) {
+		return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+	}
+}
@@ -0,0 +1,64 @@
+package com.br.project.librarybookapi.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+
+/**
+ * Conversão entre entidades e DTOs usada pelos controllers. Escrita à mão,
+ * sem reflexão: cada linha custa só os objetos de destino, criados pelos
+ * builders dos DTOs.
+ */
+public final class DtoMapper {
+
+	private DtoMapper() {
+	}
+	
+	public static Book toEntity(BookDTO dto) {
+		Book book = new Book();
+		book.setTitle(dto.getTitle());
+		book.setAuthor(dto.getAuthor());
+		book.setIsbn(dto.getIsbn());
+		return book;
+	}
+	
+	public static BookDTO toDTO(Book book) {
+		return BookDTO.builder()
+				.id(book.getId())
+				.title(book.getTitle())
+				.author(book.getAuthor())
+				.isbn(book.getIsbn())
+				.build();
+	}
+	
+	public static LoanDTO toDTO(Loan loan) {
+		BookDTO book = loan.getBook() == null ? null : toDTO(loan.getBook());
+		return LoanDTO.builder()
+				.id(loan.getId())
+				.customer(loan.getCustomer())
+				.email(loan.getCustomerEmail())
+				.loanDate(loan.getLoanDate())
+				.book(book)
+				.build();
+	}
+	
+	public static List<BookDTO> toBookDTOs(List<Book> books) {
+		List<BookDTO> dtos = new ArrayList<>(books.size());
+		for(Book book : books) {
+			dtos.add(toDTO(book));
+		}
+		return dtos;
+	}
+	
+	public static List<LoanDTO> toLoanDTOs(List<Loan> loans) {
+		List<LoanDTO> dtos = new ArrayList<>(loans.size());
+		for(Loan loan : loans) {
+			dtos.add(toDTO(loan));
+		}
+		return dtos;
+	}
+}
@@ -0,0 +1,138 @@
+package com.br.project.librarybookapi.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.br.project.librarybookapi.model.Book;
+
+/**
+ * ETags fortes dos livros. O de um livro é a sua versão; o de uma página de
+ * listagem é um hash dos livros que ela contém, como aparecem na resposta.
+ * 
+ * A mesma URL responde em JSON, CBOR ou Smile conforme o Accept, então o ETag
+ * também identifica o formato: o JSON fica com o ETag simples e os formatos
+ * binários ganham o subtipo (por exemplo "3+cbor").
+ */
+final class ETags {
+
+	static final String ANY = "*";
+	
+	static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+	
+	/**
+	 * Na ordem em que a negociação do Spring escolhe entre eles.
+	 */
+	private static final List<MediaType> REPRESENTATIONS = Arrays.asList(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, SMILE);
+	
+	private ETags() {
+	}
+	
+	/**
+	 * Formato que a negociação de conteúdo vai escolher para o Accept.
+	 */
+	static MediaType representation(String accept) {
+		if(accept == null || accept.trim().isEmpty()) {
+			return MediaType.APPLICATION_JSON;
+		}
+		List<MediaType> requested;
+		try {
+			requested = MediaType.parseMediaTypes(accept);
+		} catch (InvalidMediaTypeException e) {
+			return MediaType.APPLICATION_JSON;
+		}
+		MediaType.sortBySpecificityAndQuality(requested);
+		for(MediaType type : requested) {
+			if(type.getQualityValue() == 0) {
+				continue;
+			}
+			for(MediaType representation : REPRESENTATIONS) {
+				if(type.isCompatibleWith(representation)) {
+					return representation;
+				}
+			}
+		}
+		return MediaType.APPLICATION_JSON;
+	}
+	
+	/**
+	 * @return o ETag da versão no formato, ou null quando o livro ainda não tem versão
+	 */
+	static String of(Long version, MediaType representation) {
+		if(version == null) {
+			return null;
+		}
+		return MediaType.APPLICATION_JSON.equals(representation)
+				? "\"" + version + "\""
+				: "\"" + version + "+" + representation.getSubtype() + "\"";
+	}
+	
+	static String of(List<Book> books, MediaType representation, Object... extras) {
+		StringBuilder key = new StringBuilder();
+		key.append(representation).append('|');
+		for(Object extra : extras) {
+			key.append(extra).append('|');
+		}
+		for(Book book : books) {
+			key.append(book.getId()).append('\u0000').append(book.getTitle()).append('\u0000')
+				.append(book.getAuthor()).append('\u0000').append(book.getIsbn()).append('\u0001');
+		}
+		return "\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+	
+	/**
+	 * Comparação fraca usada pelo If-None-Match: ignora o prefixo W/.
+	 */
+	static boolean noneMatch(String header, String etag) {
+		return contains(header, etag, true);
+	}
+	
+	/**
+	 * Versão exigida por um If-Match com um único ETag forte, em qualquer
+	 * formato.
+	 * 
+	 * @return null quando o cabeçalho não foi enviado ou é *
+	 * @throws ResponseStatusException 412 para ETags fracos, listas ou valores inválidos
+	 */
+	static Long version(String ifMatch) {
+		if(ifMatch == null || ifMatch.trim().equals(ANY)) {
+			return null;
+		}
+		String etag = ifMatch.trim();
+		if(etag.length() > 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+			String version = etag.substring(1, etag.length() - 1);
+			int format = version.indexOf('+');
+			try {
+				return Long.valueOf(format < 0 ? version : version.substring(0, format));
+			} catch (NumberFormatException e) {
+				// cai no 412 abaixo
+			}
+		}
+		throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "O livro foi alterado por outra requisição");
+	}
+	
+	private static boolean contains(String header, String etag, boolean weak) {
+		if(header == null || etag == null) {
+			return false;
+		}
+		for(String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if(candidate.equals(ANY)) {
+				return true;
+			}
+			if(weak && candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if(candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
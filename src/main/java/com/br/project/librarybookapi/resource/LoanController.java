@@ -1,32 +1,47 @@
 package com.br.project.librarybookapi.resource;
 
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.AcceptEncoding;
+import com.br.project.librarybookapi.dto.BulkReturnDTO;
+import com.br.project.librarybookapi.dto.BulkReturnResultDTO;
+import com.br.project.librarybookapi.dto.CursorPageDTO;
 import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.dto.LoanExportFilterDTO;
 import com.br.project.librarybookapi.dto.LoanFilterDTO;
 import com.br.project.librarybookapi.dto.ReturnedLoanDTO;
+import com.br.project.librarybookapi.dto.SliceDTO;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
 import com.br.project.librarybookapi.service.BookService;
+import com.br.project.librarybookapi.service.LoanExportService;
 import com.br.project.librarybookapi.service.LoanService;
 
-import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import lombok.RequiredArgsConstructor;
 
 @RestController
@@ -34,8 +49,11 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class LoanController {
 
+	public static final int MAX_BULK_RETURN_ITEMS = 1000;
+	
 	private final BookService bookService;
 	private final LoanService loanService;
+	private final LoanExportService exportService;
 	
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
@@ -48,22 +66,83 @@ public class LoanController {
 	
 	@PatchMapping("{id}")
 	public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
-		Loan loan = loanService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-		loan.setReturned(dto.getReturned());
-		loanService.update(loan);
+		if(!loanService.updateReturned(id, Boolean.TRUE.equals(dto.getReturned()))) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+		}
+	}
+	
+	/**
+	 * Devolução de um carrinho de livros em uma única requisição.
+	 */
+	@PatchMapping
+	public BulkReturnResultDTO returnBooks(@RequestBody BulkReturnDTO dto) {
+		List<Long> ids = dto.getIds() == null ? Collections.emptyList() : dto.getIds();
+		List<String> isbns = dto.getIsbns() == null ? Collections.emptyList() : dto.getIsbns();
+		if(ids.size() + isbns.size() > MAX_BULK_RETURN_ITEMS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BULK_RETURN_ITEMS + " loans per request");
+		}
+		return loanService.returnLoans(ids, isbns);
 	}
 	
 	@GetMapping
 	public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest){
 		Page<Loan> result = loanService.find(dto, pageRequest);
-		List<LoanDTO> loans = result.getContent().stream().map(entity -> {
-			Book book = entity.getBook();
-			BookDTO bookDTO = BookDTO.builder().id(book.getId()).author(book.getAuthor()).title(book.getTitle()).isbn(book.getIsbn()).build();
-			LoanDTO loanDTO = LoanDTO.builder().id(entity.getId()).book(bookDTO).customer(entity.getCustomer()).loanDate(entity.getLoanDate()).build();
-			//loanDTO.setBook(bookDTO);
-			return loanDTO;
-		}).collect(Collectors.toList());
+		List<LoanDTO> loans = DtoMapper.toLoanDTOs(result.getContent());
 		
 		return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
 	}
+	
+	@GetMapping(params = {"count=false", "!cursor"})
+	public SliceDTO<LoanDTO> findSlice(LoanFilterDTO dto, Pageable pageRequest){
+		Slice<Loan> result = loanService.findSlice(dto, pageRequest);
+		List<LoanDTO> loans = DtoMapper.toLoanDTOs(result.getContent());
+		
+		return SliceDTO.<LoanDTO>builder().content(loans).number(result.getNumber()).size(result.getSize()).hasNext(result.hasNext()).build();
+	}
+	
+	@GetMapping(params = "cursor")
+	public CursorPageDTO<LoanDTO> findByCursor(LoanFilterDTO dto, @RequestParam String cursor, @RequestParam(defaultValue = "20") int size){
+		int pageSize = CursorToken.pageSize(size);
+		Slice<Loan> result = loanService.findAfter(dto, CursorToken.decode(cursor), pageSize);
+		List<LoanDTO> loans = DtoMapper.toLoanDTOs(result.getContent());
+		
+		return CursorPageDTO.<LoanDTO>builder().content(loans).size(pageSize).next(CursorToken.next(result, Loan::getId)).build();
+	}
+	
+	/**
+	 * Exporta o histórico de empréstimos em CSV ou NDJSON, escrito à medida
+	 * que as linhas são lidas do banco. Compacta com gzip quando o cliente aceita.
+	 */
+	@GetMapping("export")
+	public ResponseEntity<StreamingResponseBody> export(LoanExportFilterDTO filter,
+			@RequestParam(defaultValue = "csv") String format,
+			@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding){
+		LoanExportService.Format exportFormat = exportFormat(format);
+		boolean gzip = AcceptEncoding.acceptsGzip(acceptEncoding);
+		
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.contentType(exportFormat == LoanExportService.Format.CSV ? MediaType.valueOf("text/csv") : MediaType.APPLICATION_NDJSON)
+				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loans." + exportFormat.name().toLowerCase(Locale.ROOT) + "\"")
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if(gzip) {
+			response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		return response.body(output -> {
+			if(gzip) {
+				GZIPOutputStream compressed = new GZIPOutputStream(output, true);
+				exportService.export(filter, exportFormat, compressed);
+				compressed.finish();
+			} else {
+				exportService.export(filter, exportFormat, output);
+			}
+		});
+	}
+	
+	private static LoanExportService.Format exportFormat(String format) {
+		try {
+			return LoanExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported export format " + format);
+		}
+	}
 }
@@ -0,0 +1,76 @@
+package com.br.project.librarybookapi.resource;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.dto.LoanFilterDTO;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.service.BookService;
+import com.br.project.librarybookapi.service.LoanService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Leitura em fluxo (NDJSON) de todos os livros e empréstimos que atendem ao
+ * filtro. Os registros são lidos em blocos por cursor de id, em threads do
+ * boundedElastic, e o próximo bloco só é buscado quando o cliente consumiu o
+ * anterior: a memória usada não depende do tamanho do resultado e o cliente
+ * recebe a primeira linha logo após o primeiro bloco.
+ */
+@RestController
+@RequestMapping("/api/stream")
+public class StreamController {
+
+	private final BookService bookService;
+	
+	private final LoanService loanService;
+	
+	private final int chunkSize;
+	
+	public StreamController(BookService bookService, LoanService loanService,
+			@Value("${library.stream.chunk-size:500}") int chunkSize) {
+		this.bookService = bookService;
+		this.loanService = loanService;
+		this.chunkSize = chunkSize;
+	}
+	
+	@GetMapping(value = "books", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<BookDTO> books(BookDTO dto) {
+		Book filter = DtoMapper.toEntity(dto);
+		return stream(afterId -> bookService.findAfter(filter, afterId, chunkSize), Book::getId)
+				.map(DtoMapper::toDTO);
+	}
+	
+	@GetMapping(value = "loans", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<LoanDTO> loans(LoanFilterDTO filter) {
+		return stream(afterId -> loanService.findAfter(filter, afterId, chunkSize), Loan::getId)
+				.map(DtoMapper::toDTO);
+	}
+	
+	private <T> Flux<T> stream(Function<Long, Slice<T>> chunk, Function<T, Long> id) {
+		return fetch(chunk, null)
+				.expand(slice -> slice.hasNext() ? fetch(chunk, lastId(slice, id)) : Mono.empty())
+				.concatMapIterable(Slice::getContent);
+	}
+	
+	private <T> Mono<Slice<T>> fetch(Function<Long, Slice<T>> chunk, Long afterId) {
+		return Mono.fromCallable(() -> chunk.apply(afterId)).subscribeOn(Schedulers.boundedElastic());
+	}
+	
+	private <T> Long lastId(Slice<T> slice, Function<T, Long> id) {
+		List<T> content = slice.getContent();
+		return id.apply(content.get(content.size() - 1));
+	}
+}
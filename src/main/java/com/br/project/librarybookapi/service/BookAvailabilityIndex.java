@@ -0,0 +1,115 @@
+package com.br.project.librarybookapi.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.stereotype.Component;
+
+import com.br.project.librarybookapi.repository.LoanRepository;
+
+/**
+ * Ids dos livros com empréstimo em aberto, e o livro de cada empréstimo em
+ * aberto, para que a devolução por id do empréstimo libere o livro sem ler a
+ * base. Reconstruído a partir da tabela loan na inicialização e atualizado na
+ * criação e devolução de empréstimos.
+ * 
+ * Reserva e liberação não usam lock. Para o caminho lento, em que o índice
+ * precisa ser conferido com a base, há um conjunto de locks por faixa de
+ * livros: livros diferentes raramente disputam o mesmo lock.
+ */
+@Component
+public class BookAvailabilityIndex {
+
+	private final LoanRepository repository;
+	
+	private final Set<Long> loanedBooks = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Id do empréstimo -> id do livro.
+	 */
+	private final Map<Long, Long> openLoans = new ConcurrentHashMap<>();
+	
+	private final Lock[] stripes;
+	
+	public BookAvailabilityIndex(LoanRepository repository) {
+		this.repository = repository;
+		int size = 1;
+		while(size < Runtime.getRuntime().availableProcessors() * 16) {
+			size <<= 1;
+		}
+		this.stripes = new Lock[size];
+		for(int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+	
+	@PostConstruct
+	public void rebuild() {
+		loanedBooks.clear();
+		openLoans.clear();
+		for(Object[] loan : repository.findOpenLoanBookIds()) {
+			openLoans.put((Long) loan[0], (Long) loan[1]);
+			loanedBooks.add((Long) loan[1]);
+		}
+	}
+	
+	public boolean isLoaned(Long bookId) {
+		return loanedBooks.contains(bookId);
+	}
+	
+	/**
+	 * Marca o livro como emprestado.
+	 * 
+	 * @return false se o livro já estava emprestado
+	 */
+	public boolean reserve(Long bookId) {
+		return loanedBooks.add(bookId);
+	}
+	
+	/**
+	 * Associa o empréstimo gravado ao livro já reservado.
+	 */
+	public void opened(Long loanId, Long bookId) {
+		if(loanId != null) {
+			openLoans.put(loanId, bookId);
+		}
+	}
+	
+	public void release(Long bookId) {
+		loanedBooks.remove(bookId);
+	}
+	
+	/**
+	 * Libera o livro do empréstimo devolvido. Empréstimos abertos em outra
+	 * instância não são conhecidos aqui; o livro deles continua marcado e o
+	 * próximo empréstimo confere na base.
+	 * 
+	 * @return false se o empréstimo não estava no índice
+	 */
+	public boolean releaseLoan(Long loanId) {
+		Long bookId = openLoans.remove(loanId);
+		if(bookId == null) {
+			return false;
+		}
+		loanedBooks.remove(bookId);
+		return true;
+	}
+	
+	/**
+	 * @return o lock da faixa do livro; o mesmo livro sempre recebe o mesmo lock
+	 */
+	public Lock lockFor(Long bookId) {
+		int hash = bookId.hashCode();
+		hash ^= hash >>> 16;
+		return stripes[hash & (stripes.length - 1)];
+	}
+	
+	public int size() {
+		return loanedBooks.size();
+	}
+}
@@ -0,0 +1,17 @@
+package com.br.project.librarybookapi.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.br.project.librarybookapi.dto.BookImportResultDTO;
+
+public interface BookImportService {
+
+	enum Format {
+		CSV,
+		NDJSON
+	}
+	
+	BookImportResultDTO importBooks(InputStream input, Format format) throws IOException;
+	
+}
@@ -0,0 +1,625 @@
+package com.br.project.librarybookapi.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+
+/**
+ * Índice invertido de trigramas sobre title, author e isbn. Responde à busca
+ * de livros com a mesma semântica do filtro por exemplo (contém, ignorando
+ * maiúsculas, campos nulos ignorados) sem varrer a tabela book.
+ * 
+ * É carregado da base em segundo plano e atualizado a cada poucos segundos
+ * com os livros alterados desde a última atualização (last_modified), o que
+ * traz as inclusões e alterações feitas por outras instâncias. Exclusões de
+ * outras instâncias só aparecem na recarga completa, bem mais espaçada.
+ * Alterações desta instância feitas durante uma recarga são aplicadas no
+ * índice atual e repetidas no novo antes da troca. Enquanto não estiver
+ * pronto, {@link #isReady()} devolve false e a busca vai para a base.
+ * 
+ * Cada trigrama guarda os ids dos livros em um long[] ordenado, sem objetos
+ * por entrada, e a busca intersecta as listas a partir da menor, procurando
+ * cada id nas demais por busca binária.
+ */
+@Component
+public class BookSearchIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(BookSearchIndex.class);
+	
+	private static final int GRAM = 3;
+	
+	private static final int REBUILD_CHUNK_SIZE = 1000;
+	
+	/**
+	 * Folga na busca por alterações, para transações que gravaram
+	 * last_modified antes do início da atualização anterior mas só
+	 * confirmaram depois dele, e para relógios um pouco diferentes entre
+	 * instâncias.
+	 */
+	private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+	
+	private final BookRepository repository;
+	
+	private final Object writeLock = new Object();
+	
+	private volatile Index index = new Index();
+	
+	private volatile boolean ready;
+	
+	/**
+	 * Alterações feitas durante uma recarga completa; null fora dela.
+	 */
+	private List<Consumer<Index>> pending;
+	
+	/**
+	 * Ids excluídos desde o início da atualização incremental em andamento,
+	 * que não podem voltar ao índice por uma leitura anterior à exclusão.
+	 */
+	private final Set<Long> removedDuringRefresh = ConcurrentHashMap.newKeySet();
+	
+	private volatile Instant modifiedSince;
+	
+	public BookSearchIndex(BookRepository repository) {
+		this.repository = repository;
+	}
+	
+	@Scheduled(initialDelay = 0, fixedDelayString = "${library.search.rebuild-interval:21600000}")
+	public synchronized void rebuild() {
+		Instant started = Instant.now();
+		synchronized(writeLock) {
+			pending = new ArrayList<>();
+		}
+		Index fresh = new Index();
+		try {
+			Long afterId = null;
+			Slice<Book> chunk;
+			do {
+				chunk = repository.findAfter(null, null, null, afterId, PageRequest.of(0, REBUILD_CHUNK_SIZE));
+				for(Book book : chunk) {
+					fresh.put(new Document(book));
+					afterId = book.getId();
+				}
+			} while(chunk.hasNext());
+			fresh.compact();
+		} catch (RuntimeException e) {
+			synchronized(writeLock) {
+				pending = null;
+			}
+			throw e;
+		}
+		synchronized(writeLock) {
+			pending.forEach(write -> write.accept(fresh));
+			pending = null;
+			this.index = fresh;
+		}
+		this.modifiedSince = started.minus(REFRESH_OVERLAP);
+		this.ready = true;
+		log.info("Índice de busca de livros carregado com {} livros", fresh.documents.size());
+	}
+	
+	/**
+	 * Aplica os livros incluídos ou alterados desde a atualização anterior,
+	 * em blocos ordenados por id.
+	 */
+	@Scheduled(initialDelayString = "${library.search.refresh-interval:30000}", fixedDelayString = "${library.search.refresh-interval:30000}")
+	public synchronized void refresh() {
+		Instant since = modifiedSince;
+		if(!ready || since == null) {
+			return;
+		}
+		Instant started = Instant.now();
+		removedDuringRefresh.clear();
+		int refreshed = 0;
+		Long afterId = 0L;
+		Slice<Book> chunk;
+		do {
+			chunk = repository.findModifiedAfter(since, afterId, PageRequest.of(0, REBUILD_CHUNK_SIZE));
+			for(Book book : chunk) {
+				Document document = new Document(book);
+				write(current -> {
+					if(!removedDuringRefresh.contains(document.id)) {
+						current.putIfNotOlder(document);
+					}
+				});
+				afterId = book.getId();
+				refreshed++;
+			}
+		} while(chunk.hasNext());
+		this.modifiedSince = started.minus(REFRESH_OVERLAP);
+		log.debug("Índice de busca de livros atualizado com {} livros alterados", refreshed);
+	}
+	
+	public boolean isReady() {
+		return ready;
+	}
+	
+	public void index(Book book) {
+		if(book != null && book.getId() != null) {
+			Document document = new Document(book);
+			write(current -> current.put(document));
+		}
+	}
+	
+	public void remove(Long id) {
+		removedDuringRefresh.add(id);
+		write(current -> current.remove(id));
+	}
+	
+	/**
+	 * Troca título e autor de um livro já indexado, mantendo o isbn.
+	 */
+	public void update(Long id, String title, String author) {
+		write(current -> current.update(id, title, author));
+	}
+	
+	/**
+	 * Aplica a alteração no índice atual e a guarda para repetir no índice em
+	 * carga, se houver uma recarga em andamento.
+	 */
+	private void write(Consumer<Index> write) {
+		synchronized(writeLock) {
+			write.accept(index);
+			if(pending != null) {
+				pending.add(write);
+			}
+		}
+	}
+	
+	public int size() {
+		return index.documents.size();
+	}
+	
+	public Page<Book> search(Book filter, Pageable pageable) {
+		Index current = index;
+		List<Criterion> criteria = criteria(filter);
+		if(criteria.isEmpty() && isIdOrder(pageable.getSort())) {
+			List<Book> content = new ArrayList<>();
+			Iterator<Document> documents = current.documents.values().iterator();
+			skip(documents, pageable);
+			while(documents.hasNext() && (pageable.isUnpaged() || content.size() < pageable.getPageSize())) {
+				content.add(documents.next().toBook());
+			}
+			return new PageImpl<>(content, pageable, current.documents.size());
+		}
+		List<Document> matches = ranked(current, criteria, pageable.getSort());
+		return new PageImpl<>(page(matches, pageable), pageable, matches.size());
+	}
+	
+	public Slice<Book> searchSlice(Book filter, Pageable pageable) {
+		Page<Book> page = search(filter, pageable);
+		return new SliceImpl<>(page.getContent(), pageable, page.hasNext());
+	}
+	
+	/**
+	 * Busca em ordem de id a partir do id informado, para a paginação por cursor.
+	 */
+	public Slice<Book> searchAfter(Book filter, Long afterId, int size) {
+		Index current = index;
+		List<Criterion> criteria = criteria(filter);
+		long[] candidates = current.candidates(criteria);
+		List<Book> content = new ArrayList<>(size + 1);
+		if(candidates == null) {
+			Collection<Document> source = afterId == null
+					? current.documents.values()
+					: current.documents.tailMap(afterId, false).values();
+			for(Document document : source) {
+				if(document.matches(criteria)) {
+					content.add(document.toBook());
+					if(content.size() > size) {
+						break;
+					}
+				}
+			}
+		} else {
+			int from = 0;
+			if(afterId != null) {
+				int at = Arrays.binarySearch(candidates, afterId);
+				from = at >= 0 ? at + 1 : -at - 1;
+			}
+			for(int i = from; i < candidates.length && content.size() <= size; i++) {
+				Document document = current.documents.get(candidates[i]);
+				if(document != null && document.matches(criteria)) {
+					content.add(document.toBook());
+				}
+			}
+		}
+		boolean hasNext = content.size() > size;
+		return new SliceImpl<>(hasNext ? content.subList(0, size) : content, PageRequest.of(0, size), hasNext);
+	}
+	
+	private List<Document> ranked(Index current, List<Criterion> criteria, Sort sort) {
+		long[] candidates = current.candidates(criteria);
+		List<Document> matches = new ArrayList<>();
+		if(candidates == null) {
+			for(Document document : current.documents.values()) {
+				if(document.matches(criteria)) {
+					matches.add(document);
+				}
+			}
+		} else {
+			for(long id : candidates) {
+				Document document = current.documents.get(id);
+				if(document != null && document.matches(criteria)) {
+					matches.add(document);
+				}
+			}
+		}
+		if(sort.isSorted()) {
+			matches.sort(comparator(sort));
+		} else if(!criteria.isEmpty()) {
+			matches.sort(Comparator.comparingDouble((Document document) -> document.score(criteria)).reversed());
+		}
+		return matches;
+	}
+	
+	private List<Book> page(List<Document> matches, Pageable pageable) {
+		if(pageable.isUnpaged()) {
+			return toBooks(matches);
+		}
+		int from = (int) Math.min(pageable.getOffset(), matches.size());
+		int to = Math.min(from + pageable.getPageSize(), matches.size());
+		return toBooks(matches.subList(from, to));
+	}
+	
+	private List<Book> toBooks(List<Document> documents) {
+		List<Book> books = new ArrayList<>(documents.size());
+		documents.forEach(document -> books.add(document.toBook()));
+		return books;
+	}
+	
+	private void skip(Iterator<Document> documents, Pageable pageable) {
+		if(pageable.isPaged()) {
+			for(long i = 0; i < pageable.getOffset() && documents.hasNext(); i++) {
+				documents.next();
+			}
+		}
+	}
+	
+	private boolean isIdOrder(Sort sort) {
+		if(sort.isUnsorted()) {
+			return true;
+		}
+		List<Sort.Order> orders = sort.toList();
+		return orders.size() == 1 && orders.get(0).getProperty().equals("id") && orders.get(0).isAscending();
+	}
+	
+	private Comparator<Document> comparator(Sort sort) {
+		Comparator<Document> comparator = null;
+		for(Sort.Order order : sort) {
+			Comparator<Document> next = propertyComparator(order.getProperty());
+			if(next == null) {
+				continue;
+			}
+			if(order.isDescending()) {
+				next = next.reversed();
+			}
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		Comparator<Document> byId = Comparator.comparing(document -> document.id);
+		return comparator == null ? byId : comparator.thenComparing(byId);
+	}
+	
+	private Comparator<Document> propertyComparator(String property) {
+		switch(property) {
+		case "id":
+			return Comparator.comparing(document -> document.id);
+		case "title":
+			return Comparator.comparing(document -> document.title, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+		case "author":
+			return Comparator.comparing(document -> document.author, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+		case "isbn":
+			return Comparator.comparing(document -> document.isbn, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+		default:
+			return null;
+		}
+	}
+	
+	private List<Criterion> criteria(Book filter) {
+		List<Criterion> criteria = new ArrayList<>(3);
+		if(filter.getTitle() != null) {
+			criteria.add(new Criterion('t', filter.getTitle(), document -> document.lowerTitle));
+		}
+		if(filter.getAuthor() != null) {
+			criteria.add(new Criterion('a', filter.getAuthor(), document -> document.lowerAuthor));
+		}
+		if(filter.getIsbn() != null) {
+			criteria.add(new Criterion('i', filter.getIsbn(), document -> document.lowerIsbn));
+		}
+		return criteria;
+	}
+	
+	private static String lower(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+	
+	private static final class Criterion {
+		private final char field;
+		private final String term;
+		private final Function<Document, String> value;
+		
+		Criterion(char field, String term, Function<Document, String> value) {
+			this.field = field;
+			this.term = lower(term);
+			this.value = value;
+		}
+	}
+	
+	private static final class Document {
+		private final Long id;
+		private final String title;
+		private final String author;
+		private final String isbn;
+		private final Long version;
+		private final String lowerTitle;
+		private final String lowerAuthor;
+		private final String lowerIsbn;
+		
+		Document(Book book) {
+			this.id = book.getId();
+			this.title = book.getTitle();
+			this.author = book.getAuthor();
+			this.isbn = book.getIsbn();
+			this.version = book.getVersion();
+			this.lowerTitle = lower(title);
+			this.lowerAuthor = lower(author);
+			this.lowerIsbn = lower(isbn);
+		}
+		
+		boolean matches(List<Criterion> criteria) {
+			for(Criterion criterion : criteria) {
+				String value = criterion.value.apply(this);
+				if(value == null || !value.contains(criterion.term)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Igualdade pesa mais que prefixo, que pesa mais que início de palavra,
+		 * que pesa mais que ocorrência em qualquer posição.
+		 */
+		double score(List<Criterion> criteria) {
+			double score = 0;
+			for(Criterion criterion : criteria) {
+				String value = criterion.value.apply(this);
+				if(value.equals(criterion.term)) {
+					score += 4;
+				} else if(value.startsWith(criterion.term)) {
+					score += 3;
+				} else if(value.contains(" " + criterion.term)) {
+					score += 2;
+				} else {
+					score += 1;
+				}
+			}
+			return score;
+		}
+		
+		Book toBook() {
+			return Book.builder().id(id).title(title).author(author).isbn(isbn).version(version).build();
+		}
+	}
+	
+	private static final class Index {
+		private final ConcurrentSkipListMap<Long, Document> documents = new ConcurrentSkipListMap<>();
+		private final Map<String, Posting> postings = new HashMap<>();
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		
+		void put(Document document) {
+			lock.writeLock().lock();
+			try {
+				Document old = documents.put(document.id, document);
+				if(old != null) {
+					unpost(old);
+				}
+				post(document);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		/**
+		 * Não substitui uma versão mais nova já indexada por esta instância.
+		 */
+		void putIfNotOlder(Document document) {
+			lock.writeLock().lock();
+			try {
+				Document old = documents.get(document.id);
+				if(old == null || old.version == null || document.version == null || document.version >= old.version) {
+					put(document);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		void update(Long id, String title, String author) {
+			lock.writeLock().lock();
+			try {
+				Document old = documents.get(id);
+				if(old != null) {
+					Book book = old.toBook();
+					book.setTitle(title);
+					book.setAuthor(author);
+					book.setVersion(old.version == null ? null : old.version + 1);
+					put(new Document(book));
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		void remove(Long id) {
+			lock.writeLock().lock();
+			try {
+				Document old = documents.remove(id);
+				if(old != null) {
+					unpost(old);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		/**
+		 * Devolve a folga de crescimento das listas depois da carga completa.
+		 */
+		void compact() {
+			lock.writeLock().lock();
+			try {
+				postings.values().forEach(Posting::trim);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		/**
+		 * @return ids, em ordem crescente, que contêm todos os trigramas dos
+		 * termos, ou null quando nenhum termo é longo o bastante para usar o
+		 * índice
+		 */
+		long[] candidates(List<Criterion> criteria) {
+			Set<String> grams = new LinkedHashSet<>();
+			for(Criterion criterion : criteria) {
+				grams(criterion.field, criterion.term, grams::add);
+			}
+			if(grams.isEmpty()) {
+				return null;
+			}
+			lock.readLock().lock();
+			try {
+				List<Posting> lists = new ArrayList<>(grams.size());
+				for(String gram : grams) {
+					Posting posting = postings.get(gram);
+					if(posting == null) {
+						return new long[0];
+					}
+					lists.add(posting);
+				}
+				lists.sort(Comparator.comparingInt(posting -> posting.size));
+				Posting smallest = lists.get(0);
+				long[] result = new long[smallest.size];
+				int count = 0;
+				next:
+				for(int i = 0; i < smallest.size; i++) {
+					long id = smallest.ids[i];
+					for(int j = 1; j < lists.size(); j++) {
+						if(!lists.get(j).contains(id)) {
+							continue next;
+						}
+					}
+					result[count++] = id;
+				}
+				return count == result.length ? result : Arrays.copyOf(result, count);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		
+		private void post(Document document) {
+			grams('t', document.lowerTitle, gram -> postings.computeIfAbsent(gram, k -> new Posting()).add(document.id));
+			grams('a', document.lowerAuthor, gram -> postings.computeIfAbsent(gram, k -> new Posting()).add(document.id));
+			grams('i', document.lowerIsbn, gram -> postings.computeIfAbsent(gram, k -> new Posting()).add(document.id));
+		}
+		
+		private void unpost(Document document) {
+			grams('t', document.lowerTitle, gram -> removePosting(gram, document.id));
+			grams('a', document.lowerAuthor, gram -> removePosting(gram, document.id));
+			grams('i', document.lowerIsbn, gram -> removePosting(gram, document.id));
+		}
+		
+		private void removePosting(String gram, Long id) {
+			Posting posting = postings.get(gram);
+			if(posting != null && posting.remove(id) && posting.size == 0) {
+				postings.remove(gram);
+			}
+		}
+		
+		private static void grams(char field, String value, Consumer<String> consumer) {
+			if(value == null) {
+				return;
+			}
+			for(int i = 0; i + GRAM <= value.length(); i++) {
+				consumer.accept(field + value.substring(i, i + GRAM));
+			}
+		}
+	}
+	
+	/**
+	 * Ids de um trigrama em ordem crescente. A carga completa lê os livros em
+	 * ordem de id, então quase toda inclusão é no fim da lista.
+	 */
+	private static final class Posting {
+		private long[] ids = new long[2];
+		private int size;
+		
+		void add(long id) {
+			int at = size;
+			if(size > 0 && ids[size - 1] >= id) {
+				at = Arrays.binarySearch(ids, 0, size, id);
+				if(at >= 0) {
+					return;
+				}
+				at = -at - 1;
+			}
+			if(size == ids.length) {
+				ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+			}
+			System.arraycopy(ids, at, ids, at + 1, size - at);
+			ids[at] = id;
+			size++;
+		}
+		
+		boolean remove(long id) {
+			int at = Arrays.binarySearch(ids, 0, size, id);
+			if(at < 0) {
+				return false;
+			}
+			System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+			size--;
+			return true;
+		}
+		
+		boolean contains(long id) {
+			return Arrays.binarySearch(ids, 0, size, id) >= 0;
+		}
+		
+		void trim() {
+			if(ids.length > size) {
+				ids = Arrays.copyOf(ids, size);
+			}
+		}
+	}
+}
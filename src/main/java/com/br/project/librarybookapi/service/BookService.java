@@ -4,7 +4,9 @@ import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.br.project.librarybookapi.dto.BookVersionDTO;
 import com.br.project.librarybookapi.model.Book;
 
 public interface BookService {
@@ -12,12 +14,30 @@ public interface BookService {
 	Book save(Book entity);
 
 	Optional<Book> getById(Long id);
+	
+	/**
+	 * Versão e data de alteração do livro, sem carregar a entidade.
+	 */
+	Optional<BookVersionDTO> getVersion(Long id);
 
 	void delete(Book book);
 
 	Book update(Book book);
+	
+	/**
+	 * Altera título e autor com um único UPDATE, sem carregar o livro.
+	 * 
+	 * @param expectedVersion versão exigida, ou null para alterar qualquer versão
+	 * @return o livro alterado, com o isbn gravado, ou vazio quando não há
+	 *         livro com esse id (e versão)
+	 */
+	Optional<Book> updateDetails(Long id, String title, String author, Long expectedVersion);
 
 	Page<Book> find(Book filter, Pageable pageRequest);
+	
+	Slice<Book> findSlice(Book filter, Pageable pageRequest);
+	
+	Slice<Book> findAfter(Book filter, Long afterId, int size);
 
 	Optional<Book> getBookByIsbn(String string);
 
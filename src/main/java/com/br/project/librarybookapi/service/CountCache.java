@@ -0,0 +1,41 @@
+package com.br.project.librarybookapi.service;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Totais das consultas paginadas, reaproveitados durante a janela de
+ * validade configurada. O total devolvido pode estar defasado até esse tempo.
+ */
+@Component
+public class CountCache {
+
+	private static final Duration DEFAULT_STALENESS = Duration.ofSeconds(30);
+	
+	private static final long MAXIMUM_SIZE = 10_000;
+	
+	private final Cache<String, Long> counts;
+	
+	public CountCache() {
+		this(DEFAULT_STALENESS);
+	}
+	
+	@Autowired
+	public CountCache(@Value("${library.pagination.count-staleness:30s}") Duration staleness) {
+		this.counts = Caffeine.newBuilder()
+				.expireAfterWrite(staleness)
+				.maximumSize(MAXIMUM_SIZE)
+				.build();
+	}
+	
+	public long count(String key, Supplier<Long> counter) {
+		return counts.get(key, k -> counter.get());
+	}
+}
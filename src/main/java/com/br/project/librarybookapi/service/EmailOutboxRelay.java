@@ -0,0 +1,192 @@
+package com.br.project.librarybookapi.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.br.project.librarybookapi.model.EmailOutbox;
+import com.br.project.librarybookapi.model.EmailStatus;
+import com.br.project.librarybookapi.repository.EmailOutboxRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Envia as mensagens pendentes da email_outbox em lotes. Cada lote é enviado
+ * por uma única conexão SMTP; falhas são reagendadas com backoff exponencial
+ * e, depois do número máximo de tentativas, ficam como DEAD. Até
+ * library.mail.outbox.parallelism lotes são enviados ao mesmo tempo, cada um
+ * reservado pelo seu próprio token, no executor de tarefas do Spring Boot
+ * (applicationTaskExecutor), que segue library.threads.virtual e é encerrado
+ * junto com o contexto.
+ */
+@Service
+public class EmailOutboxRelay {
+
+	private static final Logger log = LoggerFactory.getLogger(EmailOutboxRelay.class);
+	
+	private static final String FROM = "wpatricio26@gmail.com";
+	
+	private final EmailOutboxRepository repository;
+	private final JavaMailSender javaMailSender;
+	private final int batchSize;
+	private final int maxAttempts;
+	private final Duration initialBackoff;
+	private final Duration maxBackoff;
+	private final Duration lease;
+	private final int parallelism;
+	private final AsyncTaskExecutor executor;
+	private final Counter emailsSent;
+	private final Counter emailsFailed;
+	
+	public EmailOutboxRelay(EmailOutboxRepository repository, JavaMailSender javaMailSender, MeterRegistry registry,
+			@Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) AsyncTaskExecutor executor,
+			@Value("${library.mail.outbox.batch-size:50}") int batchSize,
+			@Value("${library.mail.outbox.max-attempts:5}") int maxAttempts,
+			@Value("${library.mail.outbox.initial-backoff:30s}") Duration initialBackoff,
+			@Value("${library.mail.outbox.max-backoff:1h}") Duration maxBackoff,
+			@Value("${library.mail.outbox.lease:5m}") Duration lease,
+			@Value("${library.mail.outbox.parallelism:4}") int parallelism) {
+		this.repository = repository;
+		this.javaMailSender = javaMailSender;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.lease = lease;
+		this.parallelism = parallelism;
+		this.executor = executor;
+		this.emailsSent = Counter.builder("library.emails.sent")
+				.description("Emails entregues ao servidor SMTP")
+				.register(registry);
+		this.emailsFailed = Counter.builder("library.emails.failed")
+				.description("Tentativas de envio de email que falharam")
+				.register(registry);
+	}
+	
+	@Scheduled(fixedDelayString = "${library.mail.outbox.poll-interval:5000}")
+	public void relay() {
+		if(parallelism <= 1) {
+			drain();
+			return;
+		}
+		List<Future<?>> workers = new ArrayList<>(parallelism);
+		for(int i = 0; i < parallelism; i++) {
+			workers.add(executor.submit(this::drain));
+		}
+		for(Future<?> worker : workers) {
+			try {
+				worker.get();
+			} catch (ExecutionException e) {
+				log.error("Falha ao enviar lote da caixa de saída", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+	
+	private void drain() {
+		int processed;
+		do {
+			processed = relayBatch();
+		} while(processed == batchSize);
+	}
+	
+	/**
+	 * @return quantas mensagens foram processadas neste lote
+	 */
+	public int relayBatch() {
+		LocalDateTime now = LocalDateTime.now();
+		List<Long> ids = repository.findDueIds(EmailStatus.PENDING, now, PageRequest.of(0, batchSize));
+		if(ids.isEmpty()) {
+			return 0;
+		}
+		String token = UUID.randomUUID().toString();
+		if(repository.claim(ids, token, EmailStatus.PENDING, now, now.plus(lease)) == 0) {
+			return ids.size();
+		}
+		List<EmailOutbox> batch = repository.findByClaimTokenOrderById(token);
+		SimpleMailMessage[] messages = batch.stream().map(this::toMessage).toArray(SimpleMailMessage[]::new);
+		
+		Map<Object, Exception> failures = Collections.emptyMap();
+		Exception batchFailure = null;
+		try {
+			javaMailSender.send(messages);
+		} catch (MailSendException e) {
+			failures = e.getFailedMessages();
+		} catch (MailException e) {
+			batchFailure = e;
+		}
+		
+		LocalDateTime finishedAt = LocalDateTime.now();
+		for(int i = 0; i < batch.size(); i++) {
+			EmailOutbox email = batch.get(i);
+			Exception failure = batchFailure != null ? batchFailure : failures.get(messages[i]);
+			if(failure == null) {
+				email.setStatus(EmailStatus.SENT);
+				email.setSentAt(finishedAt);
+				emailsSent.increment();
+			} else {
+				registerFailure(email, failure, finishedAt);
+				emailsFailed.increment();
+			}
+			email.setClaimToken(null);
+		}
+		repository.saveAll(batch);
+		return ids.size();
+	}
+	
+	private void registerFailure(EmailOutbox email, Exception failure, LocalDateTime now) {
+		int attempts = email.getAttempts() + 1;
+		email.setAttempts(attempts);
+		email.setLastError(abbreviate(failure.getMessage()));
+		if(attempts >= maxAttempts) {
+			email.setStatus(EmailStatus.DEAD);
+			log.warn("Email {} descartado após {} tentativas: {}", email.getId(), attempts, failure.getMessage());
+		} else {
+			email.setNextAttemptAt(now.plus(backoff(attempts)));
+		}
+	}
+	
+	Duration backoff(int attempts) {
+		Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+		return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+	}
+	
+	private SimpleMailMessage toMessage(EmailOutbox email) {
+		SimpleMailMessage mailMessage = new SimpleMailMessage();
+		mailMessage.setFrom(FROM);
+		mailMessage.setSubject(email.getSubject());
+		mailMessage.setText(email.getText());
+		mailMessage.setTo(email.getRecipients().split(","));
+		return mailMessage;
+	}
+	
+	private String abbreviate(String message) {
+		if(message == null || message.length() <= 1000) {
+			return message;
+		}
+		return message.substring(0, 1000);
+	}
+}
@@ -1,9 +1,14 @@
 package com.br.project.librarybookapi.service;
 
-import java.util.List;
+import java.util.Map;
 
 public interface EmailService {
 
-	void sendEmails(String message, List<String> mailsList);
+	/**
+	 * Uma mensagem por destinatário, cada uma com o próprio texto, para que
+	 * nenhum cliente veja o endereço de outro e uma falha de envio afete só
+	 * a sua mensagem.
+	 */
+	void sendEmailsToEach(String subject, Map<String, String> messagesByRecipient);
 	
 }
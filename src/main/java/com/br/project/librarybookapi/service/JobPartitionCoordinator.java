@@ -0,0 +1,238 @@
+package com.br.project.librarybookapi.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.project.librarybookapi.model.JobPartition;
+import com.br.project.librarybookapi.model.JobPartitionStatus;
+import com.br.project.librarybookapi.model.JobRun;
+import com.br.project.librarybookapi.repository.JobPartitionRepository;
+import com.br.project.librarybookapi.repository.JobRunRepository;
+
+/**
+ * Divide a execução diária de um job agendado entre as réplicas. A primeira
+ * réplica a gravar o job_run do dia planeja as partições; todas, inclusive
+ * ela, reservam partições até não sobrar nenhuma. Cada bloco de uma partição
+ * é gravado na mesma transação que renova o prazo (lease) e a chave até onde
+ * ela foi processada, então uma partição longa não perde o prazo e o
+ * trabalho de cada bloco só é gravado uma vez; partições de uma réplica que
+ * caiu voltam a ser reservadas quando o prazo vence e continuam da última
+ * chave gravada.
+ */
+@Service
+public class JobPartitionCoordinator {
+	
+	private static final Logger log = LoggerFactory.getLogger(JobPartitionCoordinator.class);
+	
+	private static final int CLAIM_CANDIDATES = 10;
+	
+	private final JobRunRepository runRepository;
+	private final JobPartitionRepository partitionRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final String nodeId;
+	private final Duration lease;
+	private final Duration pollInterval;
+	private final Duration planWait;
+	private final int maxAttempts;
+	
+	public JobPartitionCoordinator(JobRunRepository runRepository, JobPartitionRepository partitionRepository,
+			PlatformTransactionManager transactionManager,
+			@Value("${library.jobs.node-id:}") String nodeId,
+			@Value("${library.jobs.partition-lease:5m}") Duration lease,
+			@Value("${library.jobs.poll-interval:5s}") Duration pollInterval,
+			@Value("${library.jobs.plan-wait:1m}") Duration planWait,
+			@Value("${library.jobs.max-attempts:3}") int maxAttempts) {
+		this.runRepository = runRepository;
+		this.partitionRepository = partitionRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.nodeId = nodeId.isEmpty() ? defaultNodeId() : nodeId;
+		this.lease = lease;
+		this.pollInterval = pollInterval;
+		this.planWait = planWait;
+		this.maxAttempts = maxAttempts;
+	}
+	
+	/**
+	 * @param boundaries chave inicial de cada partição, em ordem; só é chamado
+	 *                   pela réplica que planeja a execução
+	 * @param processor  processa a faixa [fromKey, toKey) da partição, a partir
+	 *                   do checkpointKey quando houver, gravando cada bloco por
+	 *                   {@link PartitionProgress#commit(String, Runnable)}
+	 * @return quantas partições esta réplica concluiu
+	 */
+	public int execute(String jobName, LocalDate runDate, Supplier<List<String>> boundaries,
+			Consumer<PartitionProgress> processor) {
+		if(!awaitPlan(jobName, runDate, boundaries)) {
+			log.warn("{} de {}: partições não foram planejadas a tempo", jobName, runDate);
+			return 0;
+		}
+		int completed = 0;
+		while(true) {
+			JobPartition partition = claimNext(jobName, runDate);
+			if(partition != null) {
+				if(process(partition, processor)) {
+					completed++;
+				}
+				continue;
+			}
+			long unfinished = partitionRepository.countByJobNameAndRunDateAndStatusIn(jobName, runDate,
+					Arrays.asList(JobPartitionStatus.PENDING, JobPartitionStatus.RUNNING));
+			if(unfinished == 0 || !sleep(pollInterval)) {
+				log.info("{} de {}: {} partições concluídas por {}", jobName, runDate, completed, nodeId);
+				return completed;
+			}
+		}
+	}
+	
+	private boolean awaitPlan(String jobName, LocalDate runDate, Supplier<List<String>> boundaries) {
+		long deadline = System.nanoTime() + planWait.toNanos();
+		while(true) {
+			if(runRepository.existsByJobNameAndRunDate(jobName, runDate) || tryPlan(jobName, runDate, boundaries)) {
+				return true;
+			}
+			if(System.nanoTime() - deadline > 0 || !sleep(pollInterval)) {
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * O job_run e as partições são gravados juntos: se a réplica cair no meio
+	 * do planejamento, nada fica gravado e outra réplica planeja de novo.
+	 */
+	private boolean tryPlan(String jobName, LocalDate runDate, Supplier<List<String>> boundaries) {
+		try {
+			int partitions = transactionTemplate.execute(status -> {
+				runRepository.saveAndFlush(JobRun.builder()
+						.jobName(jobName)
+						.runDate(runDate)
+						.plannedBy(nodeId)
+						.plannedAt(LocalDateTime.now())
+						.build());
+				List<String> keys = boundaries.get();
+				List<JobPartition> batch = new ArrayList<>(keys.size());
+				for(int i = 0; i < keys.size(); i++) {
+					batch.add(JobPartition.builder()
+							.jobName(jobName)
+							.runDate(runDate)
+							.fromKey(keys.get(i))
+							.toKey(i + 1 < keys.size() ? keys.get(i + 1) : null)
+							.status(JobPartitionStatus.PENDING)
+							.build());
+				}
+				partitionRepository.saveAll(batch);
+				return batch.size();
+			});
+			log.info("{} de {}: {} partições planejadas por {}", jobName, runDate, partitions, nodeId);
+			return true;
+		} catch (DataAccessException e) {
+			// outra réplica gravou ou está gravando o job_run desta execução
+			log.debug("{} de {}: planejamento feito por outra réplica", jobName, runDate, e);
+			return false;
+		}
+	}
+	
+	private JobPartition claimNext(String jobName, LocalDate runDate) {
+		LocalDateTime now = LocalDateTime.now();
+		List<Long> ids = partitionRepository.findClaimableIds(jobName, runDate, now, PageRequest.of(0, CLAIM_CANDIDATES));
+		for(Long id : ids) {
+			if(partitionRepository.claim(id, nodeId, now, now.plus(lease)) == 1) {
+				return partitionRepository.findById(id).orElse(null);
+			}
+		}
+		return null;
+	}
+	
+	private boolean process(JobPartition partition, Consumer<PartitionProgress> processor) {
+		try {
+			processor.accept(new PartitionProgress(partition));
+			if(partitionRepository.complete(partition.getId(), nodeId, LocalDateTime.now()) == 0) {
+				throw new IllegalStateException("Partição " + partition.getId() + " foi assumida por outra réplica");
+			}
+			return true;
+		} catch (RuntimeException e) {
+			JobPartitionStatus next = partition.getAttempts() >= maxAttempts
+					? JobPartitionStatus.FAILED : JobPartitionStatus.PENDING;
+			partitionRepository.release(partition.getId(), nodeId, next, abbreviate(e.getMessage()));
+			log.warn("Partição {} de {} falhou na tentativa {}: {}", partition.getId(), partition.getJobName(),
+					partition.getAttempts(), e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Partição reservada por esta réplica, entregue ao processador.
+	 */
+	public final class PartitionProgress {
+		
+		private final JobPartition partition;
+		
+		private PartitionProgress(JobPartition partition) {
+			this.partition = partition;
+		}
+		
+		public JobPartition getPartition() {
+			return partition;
+		}
+		
+		/**
+		 * Grava o bloco na mesma transação que renova o prazo da partição e
+		 * registra checkpointKey como a última chave processada. Se outra
+		 * réplica assumiu a partição, nada do bloco é gravado.
+		 */
+		public void commit(String checkpointKey, Runnable chunk) {
+			transactionTemplate.executeWithoutResult(status -> {
+				if(partitionRepository.renew(partition.getId(), nodeId, checkpointKey, LocalDateTime.now().plus(lease)) == 0) {
+					throw new IllegalStateException("Partição " + partition.getId() + " foi assumida por outra réplica");
+				}
+				chunk.run();
+			});
+			partition.setCheckpointKey(checkpointKey);
+		}
+	}
+	
+	private boolean sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	private static String defaultNodeId() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "node";
+		}
+		return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+	}
+	
+	private String abbreviate(String message) {
+		if(message == null || message.length() <= 1000) {
+			return message;
+		}
+		return message.substring(0, 1000);
+	}
+}
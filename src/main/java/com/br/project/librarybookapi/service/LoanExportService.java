@@ -0,0 +1,22 @@
+package com.br.project.librarybookapi.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.br.project.librarybookapi.dto.LoanExportFilterDTO;
+
+public interface LoanExportService {
+
+	enum Format {
+		CSV,
+		NDJSON
+	}
+	
+	/**
+	 * Escreve os empréstimos do filtro, em ordem de id, à medida que são lidos.
+	 * 
+	 * @return quantidade de empréstimos exportados
+	 */
+	long export(LoanExportFilterDTO filter, Format format, OutputStream output) throws IOException;
+	
+}
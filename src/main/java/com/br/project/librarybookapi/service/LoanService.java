@@ -2,10 +2,14 @@ package com.br.project.librarybookapi.service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.br.project.librarybookapi.dto.BulkReturnResultDTO;
+import com.br.project.librarybookapi.dto.LateLoanDTO;
 import com.br.project.librarybookapi.dto.LoanFilterDTO;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
@@ -17,10 +21,50 @@ public interface LoanService {
 	Optional<Loan> getById(Long id);
 
 	Loan update(Loan loan);
+	
+	/**
+	 * Marca a devolução (ou reabre o empréstimo) com um único UPDATE.
+	 * 
+	 * @return false quando o empréstimo não existe
+	 */
+	boolean updateReturned(Long id, boolean returned);
+	
+	/**
+	 * Devolve de uma vez os empréstimos informados por id e os empréstimos em
+	 * aberto dos livros informados por isbn, com o resultado de cada item na
+	 * ordem recebida (primeiro os ids, depois os isbns).
+	 */
+	BulkReturnResultDTO returnLoans(List<Long> ids, List<String> isbns);
 
 	Page<Loan> find(LoanFilterDTO filter, Pageable pageRequest);
 
+	Slice<Loan> findSlice(LoanFilterDTO filter, Pageable pageRequest);
+
+	Slice<Loan> findAfter(LoanFilterDTO filter, Long afterId, int size);
+
 	Page<Loan> getLoansByBook(Book book, Pageable pageable);
+	
+	Slice<Loan> getLoanSliceByBook(Book book, Pageable pageable);
+	
+	Slice<Loan> getLoansByBookAfter(Book book, Long afterId, int size);
 
 	List<Loan> getAllLateLoans();
+	
+	/**
+	 * Percorre os empréstimos atrasados agrupados por email do cliente, a
+	 * partir do par (afterEmail, afterId), exclusivo, e com email menor que
+	 * toEmail; toEmail nulo não tem limite. Cada chamada do consumidor recebe
+	 * grupos completos: os atrasos de um mesmo cliente nunca ficam divididos
+	 * entre duas chamadas.
+	 */
+	void processLateLoansByCustomer(int chunkSize, String afterEmail, Long afterId, String toEmail,
+			Consumer<List<List<LateLoanDTO>>> groupsConsumer);
+	
+	/**
+	 * Divide os clientes com empréstimos atrasados em faixas de email com cerca
+	 * de partitionSize atrasos cada, sem dividir um cliente entre duas faixas.
+	 * 
+	 * @return o email inicial de cada faixa, a primeira começando em ""
+	 */
+	List<String> getLateLoanCustomerBoundaries(int partitionSize);
 }
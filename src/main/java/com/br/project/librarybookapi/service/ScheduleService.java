@@ -1,13 +1,18 @@
 package com.br.project.librarybookapi.service;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collector;
-import java.util.stream.Collectors;
+import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.dto.LateLoanDTO;
+import com.br.project.librarybookapi.model.JobPartition;
+import com.br.project.librarybookapi.service.JobPartitionCoordinator.PartitionProgress;
 
 import lombok.RequiredArgsConstructor;
 
@@ -16,17 +21,67 @@ import lombok.RequiredArgsConstructor;
 public class ScheduleService {
 	private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
 	
+	static final String LATE_LOANS_JOB = "late-loans";
+	
+	static final String LATE_LOAN_SUBJECT = "Emprestimo de livro não devolvido";
+	
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+	
 	private final LoanService loanService;
 	private final EmailService emailService;
+	private final JobPartitionCoordinator coordinator;
+	
+	@Value("${library.schedule.late-loans.chunk-size:500}")
+	private int chunkSize;
+	
+	@Value("${library.schedule.late-loans.partition-size:5000}")
+	private int partitionSize;
 	
+	/**
+	 * Um email por cliente com todos os seus livros atrasados. Todas as
+	 * réplicas disparam no mesmo horário e dividem os clientes em faixas de
+	 * email pelo JobPartitionCoordinator; o envio, em paralelo e com o
+	 * resultado de cada mensagem, fica com o EmailOutboxRelay.
+	 */
 	@Scheduled(cron = CRON_LATE_LOANS)
 	public void sendMailToLateLoan() {
-		List<Loan> allLateLoans = loanService.getAllLateLoans();
-		List<String> mailsList = allLateLoans.stream()
-				.map(loan -> loan.getCustomerEmail())
-				.collect(Collectors.toList());
-		
-		String message = "Atenção! Emprestimo de um livro ainda pendente. Por favor entregue o livro!";
-		emailService.sendEmails(message, mailsList);
+		coordinator.execute(LATE_LOANS_JOB, LocalDate.now(),
+				() -> loanService.getLateLoanCustomerBoundaries(partitionSize),
+				this::sendMailToLateLoan);
+	}
+	
+	/**
+	 * Grava na caixa de saída os emails dos clientes da partição, um bloco
+	 * por transação. O checkpoint é o email do último cliente gravado; quem
+	 * assume a partição continua a partir do cliente seguinte.
+	 */
+	void sendMailToLateLoan(PartitionProgress progress) {
+		JobPartition partition = progress.getPartition();
+		String checkpoint = partition.getCheckpointKey();
+		loanService.processLateLoansByCustomer(chunkSize,
+				checkpoint == null ? partition.getFromKey() : checkpoint,
+				checkpoint == null ? 0L : Long.MAX_VALUE,
+				partition.getToKey(), groups -> {
+			Map<String, String> messages = new LinkedHashMap<>();
+			for(List<LateLoanDTO> loans : groups) {
+				messages.put(loans.get(0).getCustomerEmail(), lateLoanMessage(loans));
+			}
+			String lastEmail = groups.get(groups.size() - 1).get(0).getCustomerEmail();
+			progress.commit(lastEmail, () -> emailService.sendEmailsToEach(LATE_LOAN_SUBJECT, messages));
+		});
+	}
+	
+	static String lateLoanMessage(List<LateLoanDTO> loans) {
+		StringBuilder message = new StringBuilder();
+		message.append("Olá, ").append(loans.get(0).getCustomer()).append("!\n\n");
+		message.append("Atenção! Os empréstimos abaixo ainda estão pendentes:\n\n");
+		for(LateLoanDTO loan : loans) {
+			message.append("- ").append(loan.getTitle())
+				.append(" (ISBN ").append(loan.getIsbn()).append("), emprestado em ")
+				.append(loan.getLoanDate() == null ? "-" : DATE_FORMAT.format(loan.getLoanDate()))
+				.append('\n');
+		}
+		message.append("\nPor favor entregue ").append(loans.size() == 1 ? "o livro!" : "os livros!");
+		return message.toString();
 	}
 }
@@ -0,0 +1,245 @@
+package com.br.project.librarybookapi.service.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.BookImportErrorDTO;
+import com.br.project.librarybookapi.dto.BookImportResultDTO;
+import com.br.project.librarybookapi.exception.BusinessException;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.service.BookImportService;
+import com.br.project.librarybookapi.service.BookSearchIndex;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Importa livros lendo o arquivo linha a linha. Cada lote verifica os isbns
+ * já cadastrados em uma única consulta e é gravado em sua própria transação,
+ * com insert em batch do JDBC. Se o lote violar alguma restrição da tabela
+ * (um isbn gravado por outra requisição depois da consulta, um campo longo
+ * demais), ele é regravado linha a linha e só as linhas com problema são
+ * rejeitadas.
+ */
+@Service
+public class BookImportServiceImpl implements BookImportService {
+
+	private final BookRepository repository;
+	private final BookSearchIndex searchIndex;
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectMapper objectMapper;
+	private final int batchSize;
+	private final int maxReportedErrors;
+	
+	public BookImportServiceImpl(BookRepository repository, BookSearchIndex searchIndex, EntityManager entityManager,
+			PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+			@Value("${library.books.import.batch-size:500}") int batchSize,
+			@Value("${library.books.import.max-reported-errors:1000}") int maxReportedErrors) {
+		this.repository = repository;
+		this.searchIndex = searchIndex;
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.objectMapper = objectMapper;
+		this.batchSize = batchSize;
+		this.maxReportedErrors = maxReportedErrors;
+	}
+	
+	@Override
+	public BookImportResultDTO importBooks(InputStream input, Format format) throws IOException {
+		BookImportResultDTO result = new BookImportResultDTO();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		
+		int[] columns = null;
+		if(format == Format.CSV) {
+			columns = csvColumns(reader.readLine());
+		}
+		
+		List<Row> batch = new ArrayList<>(batchSize);
+		long lineNumber = format == Format.CSV ? 1 : 0;
+		String line;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			if(line.trim().isEmpty()) {
+				continue;
+			}
+			BookDTO dto;
+			try {
+				dto = format == Format.CSV ? fromCsv(line, columns) : objectMapper.readValue(line, BookDTO.class);
+			} catch (JsonProcessingException | IllegalArgumentException e) {
+				reject(result, lineNumber, null, "Linha inválida");
+				continue;
+			}
+			if(isBlank(dto.getTitle()) || isBlank(dto.getAuthor()) || isBlank(dto.getIsbn())) {
+				reject(result, lineNumber, dto.getIsbn(), "Campos obrigatórios: title, author, isbn");
+				continue;
+			}
+			batch.add(new Row(lineNumber, dto));
+			if(batch.size() == batchSize) {
+				insert(batch, result);
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()) {
+			insert(batch, result);
+		}
+		return result;
+	}
+	
+	private void insert(List<Row> batch, BookImportResultDTO result) {
+		try {
+			insertRows(batch, result);
+		} catch (DataIntegrityViolationException e) {
+			for(Row row : batch) {
+				try {
+					insertRows(Collections.singletonList(row), result);
+				} catch (DataIntegrityViolationException rowFailure) {
+					reject(result, row.line, row.book.getIsbn(), "Livro não pôde ser gravado");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Grava as linhas em uma transação; as rejeições e o total importado só
+	 * entram no resultado depois do commit, para que um lote desfeito e
+	 * regravado linha a linha não seja contado duas vezes.
+	 */
+	private void insertRows(List<Row> rows, BookImportResultDTO result) {
+		List<Book> inserted = new ArrayList<>(rows.size());
+		List<Row> duplicated = new ArrayList<>();
+		transactionTemplate.executeWithoutResult(status -> {
+			Set<String> isbns = rows.stream().map(row -> row.book.getIsbn()).collect(Collectors.toSet());
+			Set<String> taken = new HashSet<>(repository.findExistingIsbns(isbns));
+			for(Row row : rows) {
+				BookDTO dto = row.book;
+				if(!taken.add(dto.getIsbn())) {
+					duplicated.add(row);
+					continue;
+				}
+				Book book = Book.builder().title(dto.getTitle()).author(dto.getAuthor()).isbn(dto.getIsbn()).build();
+				entityManager.persist(book);
+				inserted.add(book);
+			}
+			// pelo repositório para que a falha chegue como DataIntegrityViolationException
+			repository.flush();
+			entityManager.clear();
+		});
+		duplicated.forEach(row -> reject(result, row.line, row.book.getIsbn(), "Isbn já cadastrado"));
+		result.setImported(result.getImported() + inserted.size());
+		inserted.forEach(searchIndex::index);
+	}
+	
+	private void reject(BookImportResultDTO result, long line, String isbn, String message) {
+		result.setRejected(result.getRejected() + 1);
+		if(result.getErrors().size() < maxReportedErrors) {
+			result.getErrors().add(BookImportErrorDTO.builder().line(line).isbn(isbn).message(message).build());
+		}
+	}
+	
+	private int[] csvColumns(String header) {
+		int[] columns = {-1, -1, -1};
+		if(header != null) {
+			List<String> names = parseCsvLine(header);
+			for(int i = 0; i < names.size(); i++) {
+				switch(names.get(i).trim().toLowerCase(Locale.ROOT)) {
+				case "title":
+					columns[0] = i;
+					break;
+				case "author":
+					columns[1] = i;
+					break;
+				case "isbn":
+					columns[2] = i;
+					break;
+				default:
+				}
+			}
+		}
+		if(columns[0] < 0 || columns[1] < 0 || columns[2] < 0) {
+			throw new BusinessException("O cabeçalho do CSV deve conter title, author e isbn");
+		}
+		return columns;
+	}
+	
+	private BookDTO fromCsv(String line, int[] columns) {
+		List<String> values = parseCsvLine(line);
+		return BookDTO.builder()
+				.title(column(values, columns[0]))
+				.author(column(values, columns[1]))
+				.isbn(column(values, columns[2]))
+				.build();
+	}
+	
+	private String column(List<String> values, int index) {
+		return index < values.size() ? values.get(index).trim() : null;
+	}
+	
+	/**
+	 * Separa uma linha CSV (RFC 4180) aceitando campos entre aspas e aspas
+	 * escapadas como "".
+	 */
+	static List<String> parseCsvLine(String line) {
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(quoted) {
+				if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if(c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+			} else if(c == '"') {
+				quoted = true;
+			} else if(c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		if(quoted) {
+			throw new IllegalArgumentException("Aspas não fechadas");
+		}
+		values.add(value.toString());
+		return values;
+	}
+	
+	private boolean isBlank(String value) {
+		return value == null || value.trim().isEmpty();
+	}
+	
+	private static class Row {
+		private final long line;
+		private final BookDTO book;
+		
+		Row(long line, BookDTO book) {
+			this.line = line;
+			this.book = book;
+		}
+	}
+}
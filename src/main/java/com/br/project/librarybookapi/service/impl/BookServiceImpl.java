@@ -1,26 +1,46 @@
 package com.br.project.librarybookapi.service.impl;
 
+import java.time.Instant;
 import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import com.br.project.librarybookapi.dto.BookVersionDTO;
 import com.br.project.librarybookapi.exception.BusinessException;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.service.BookSearchIndex;
 import com.br.project.librarybookapi.service.BookService;
+import com.br.project.librarybookapi.service.CountCache;
 
 @Service
 public class BookServiceImpl implements BookService {
 
 	private BookRepository repository;
 	
+	private CountCache countCache;
+	
+	private BookSearchIndex searchIndex;
+	
 	public BookServiceImpl(BookRepository repository) {
+		this(repository, new CountCache(), new BookSearchIndex(repository));
+	}
+	
+	@Autowired
+	public BookServiceImpl(BookRepository repository, CountCache countCache, BookSearchIndex searchIndex) {
 		super();
 		this.repository = repository;
+		this.countCache = countCache;
+		this.searchIndex = searchIndex;
 	}
 	
 	@Override
@@ -28,7 +48,9 @@ public class BookServiceImpl implements BookService {
 		if(repository.existsByIsbn(book.getIsbn())) {
 			throw new BusinessException("Isbn já cadastrado");
 		}
-		return repository.save(book);
+		Book saved = repository.save(book);
+		searchIndex.index(saved);
+		return saved;
 	}
 
 	@Override
@@ -37,6 +59,11 @@ public class BookServiceImpl implements BookService {
 		return this.repository.findById(id);
 	}
 
+	@Override
+	public Optional<BookVersionDTO> getVersion(Long id) {
+		return this.repository.findVersionById(id);
+	}
+
 	@Override
 	public void delete(Book book) {
 		if(book == null || book.getId() == null) {
@@ -44,7 +71,7 @@ public class BookServiceImpl implements BookService {
 		}
 		
 		this.repository.delete(book);
-		
+		searchIndex.remove(book.getId());
 	}
 
 	@Override
@@ -53,24 +80,90 @@ public class BookServiceImpl implements BookService {
 			throw new IllegalArgumentException("O id do livro não pode ser nulo");
 		}
 		
-		return this.repository.save(book);
+		Book updated = this.repository.save(book);
+		searchIndex.index(updated);
+		return updated;
+	}
+
+	@Override
+	public Optional<Book> updateDetails(Long id, String title, String author, Long expectedVersion) {
+		if(id == null) {
+			throw new IllegalArgumentException("O id do livro não pode ser nulo");
+		}
+		
+		Optional<String> isbn = repository.updateDetails(id, title, author, expectedVersion, Instant.now());
+		if(!isbn.isPresent()) {
+			return Optional.empty();
+		}
+		searchIndex.update(id, title, author);
+		return Optional.of(Book.builder().id(id).title(title).author(author).isbn(isbn.get()).build());
 	}
 
 	@Override
 	public Page<Book> find(Book filter, Pageable pageRequest) {
-		Example<Book> example = Example.of(filter, ExampleMatcher
+		if(useSearchIndex(filter, pageRequest.getSort())) {
+			return searchIndex.search(filter, pageRequest);
+		}
+		Example<Book> example = example(filter);
+		Slice<Book> slice = repository.findSlice(example, pageRequest);
+		long total = countCache.count(countKey(filter), () -> repository.count(example));
+		return new PageImpl<Book>(slice.getContent(), pageRequest, total);
+	}
+
+	@Override
+	public Slice<Book> findSlice(Book filter, Pageable pageRequest) {
+		if(useSearchIndex(filter, pageRequest.getSort())) {
+			return searchIndex.searchSlice(filter, pageRequest);
+		}
+		return repository.findSlice(example(filter), pageRequest);
+	}
+
+	@Override
+	public Slice<Book> findAfter(Book filter, Long afterId, int size) {
+		if(useSearchIndex(filter, Sort.unsorted())) {
+			return searchIndex.searchAfter(filter, afterId, size);
+		}
+		return repository.findAfter(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), afterId, PageRequest.of(0, size));
+	}
+
+	/**
+	 * A consulta por isbn e o livro ficam no cache de segundo nível do
+	 * Hibernate (HibernateCacheConfig), que o próprio Hibernate invalida nas
+	 * alterações; cada chamada recebe a sua própria instância do livro.
+	 */
+	@Override
+	public Optional<Book> getBookByIsbn(String isbn) {
+		if(isbn == null) {
+			return Optional.empty();
+		}
+		return repository.findByIsbn(isbn);
+	}
+
+	/**
+	 * O índice de busca só atende filtros sem ordenação pedida. Listagens sem
+	 * filtro ou ordenadas vão para a base, que pagina pelo índice da ordem em
+	 * vez de ordenar o catálogo inteiro em memória.
+	 */
+	private boolean useSearchIndex(Book filter, Sort sort) {
+		return searchIndex.isReady() && sort.isUnsorted()
+				&& (filter.getTitle() != null || filter.getAuthor() != null || filter.getIsbn() != null);
+	}
+	
+	private Example<Book> example(Book filter) {
+		return Example.of(filter, ExampleMatcher
 				.matching()
 				.withIgnoreCase()
 				.withIgnoreNullValues()
 				.withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
 		);
-		return repository.findAll(example, pageRequest);
 	}
-
-	@Override
-	public Optional<Book> getBookByIsbn(String string) {
-		// TODO Auto-generated method stub
-		return null;
+	
+	private String countKey(Book filter) {
+		return String.join("|", "book", lower(filter.getTitle()), lower(filter.getAuthor()), lower(filter.getIsbn()));
+	}
+	
+	private String lower(String value) {
+		return value == null ? "" : value.toLowerCase();
 	}
 
 }
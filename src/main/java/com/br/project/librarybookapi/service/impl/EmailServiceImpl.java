@@ -1,29 +1,44 @@
 package com.br.project.librarybookapi.service.impl;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.br.project.librarybookapi.model.EmailOutbox;
+import com.br.project.librarybookapi.model.EmailStatus;
+import com.br.project.librarybookapi.repository.EmailOutboxRepository;
 import com.br.project.librarybookapi.service.EmailService;
 
 import lombok.RequiredArgsConstructor;
 
+/**
+ * Grava os emails na tabela email_outbox, na mesma transação de quem chama.
+ * O envio é feito depois pelo {@link com.br.project.librarybookapi.service.EmailOutboxRelay}.
+ */
 @Service
 @RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService{
 
-	private final JavaMailSender javaMailSender;
+	private final EmailOutboxRepository repository;
+	
 	@Override
-	public void sendEmails(String message, List<String> mailsList) {
-		String[] mails = mailsList.toArray(new String[mailsList.size()]);
-		SimpleMailMessage mailMessage = new SimpleMailMessage();
-		mailMessage.setFrom("wpatricio26@gmail.com");
-		mailMessage.setSubject("Emprestimo de livro não devolvido");
-		mailMessage.setText(message);
-		mailMessage.setTo(mails);
-		javaMailSender.send(mailMessage);
+	@Transactional
+	public void sendEmailsToEach(String subject, Map<String, String> messagesByRecipient) {
+		LocalDateTime now = LocalDateTime.now();
+		List<EmailOutbox> emails = new ArrayList<>(messagesByRecipient.size());
+		messagesByRecipient.forEach((recipient, message) -> emails.add(EmailOutbox.builder()
+				.recipients(recipient)
+				.subject(subject)
+				.text(message)
+				.status(EmailStatus.PENDING)
+				.nextAttemptAt(now)
+				.createdAt(now)
+				.build()));
+		repository.saveAll(emails);
 	}
 
 }
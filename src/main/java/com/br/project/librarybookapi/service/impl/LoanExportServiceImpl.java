@@ -0,0 +1,223 @@
+package com.br.project.librarybookapi.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.project.librarybookapi.dto.LoanExportFilterDTO;
+import com.br.project.librarybookapi.service.LoanExportService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Exporta empréstimos com uma única consulta JDBC percorrida só para frente.
+ * Cada linha é escrita na saída assim que lida, sem entidades nem listas, e
+ * a memória usada não depende da quantidade de linhas. A consulta roda numa
+ * transação somente leitura: com autocommit ligado, o driver do PostgreSQL
+ * ignora o fetch size e carrega o resultado inteiro.
+ */
+@Service
+public class LoanExportServiceImpl implements LoanExportService {
+
+	private static final String SELECT = "select l.id, l.customer, l.customer_email, l.loan_date, l.returned, "
+			+ "b.id as book_id, b.isbn, b.title, b.author from loan l join book b on b.id = l.id_book";
+	
+	private static final String[] COLUMNS = {"id", "customer", "email", "loanDate", "returned", "bookId", "isbn", "title", "author"};
+	
+	private static final int FLUSH_EVERY = 500;
+	
+	private final JdbcTemplate jdbcTemplate;
+	
+	private final TransactionTemplate transactionTemplate;
+	
+	private final ObjectMapper objectMapper;
+	
+	public LoanExportServiceImpl(DataSource dataSource, PlatformTransactionManager transactionManager,
+			ObjectMapper objectMapper, @Value("${library.loans.export.fetch-size:500}") int fetchSize) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.jdbcTemplate.setFetchSize(fetchSize);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.objectMapper = objectMapper;
+	}
+	
+	@Override
+	public long export(LoanExportFilterDTO filter, Format format, OutputStream output) throws IOException {
+		List<Object> args = new ArrayList<>();
+		String sql = SELECT + where(filter, args) + " order by l.id";
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer, objectMapper);
+		try {
+			rows.start();
+			transactionTemplate.executeWithoutResult(status ->
+					jdbcTemplate.query(sql, (RowCallbackHandler) rows::write, args.toArray()));
+			rows.end();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		writer.flush();
+		return rows.count;
+	}
+	
+	/**
+	 * Só os filtros informados entram na consulta, para que cada um possa usar
+	 * o seu índice.
+	 */
+	private String where(LoanExportFilterDTO filter, List<Object> args) {
+		List<String> conditions = new ArrayList<>();
+		if(filter.getIsbn() != null) {
+			conditions.add("b.isbn = ?");
+			args.add(filter.getIsbn());
+		}
+		if(filter.getCustomer() != null) {
+			conditions.add("l.customer = ?");
+			args.add(filter.getCustomer());
+		}
+		if(filter.getFrom() != null) {
+			conditions.add("l.loan_date >= ?");
+			args.add(Date.valueOf(filter.getFrom()));
+		}
+		if(filter.getTo() != null) {
+			conditions.add("l.loan_date <= ?");
+			args.add(Date.valueOf(filter.getTo()));
+		}
+		return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+	}
+	
+	private abstract static class RowWriter {
+		
+		final Writer writer;
+		
+		long count;
+		
+		RowWriter(Writer writer) {
+			this.writer = writer;
+		}
+		
+		void start() throws IOException {
+		}
+		
+		void end() throws IOException {
+		}
+		
+		abstract void writeRow(ResultSet rs) throws SQLException, IOException;
+		
+		void write(ResultSet rs) throws SQLException {
+			try {
+				writeRow(rs);
+				count++;
+				if(count == 1 || count % FLUSH_EVERY == 0) {
+					writer.flush();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	private static class CsvRowWriter extends RowWriter {
+		
+		CsvRowWriter(Writer writer) {
+			super(writer);
+		}
+		
+		@Override
+		void start() throws IOException {
+			writer.write(String.join(",", COLUMNS));
+			writer.write("\r\n");
+		}
+		
+		@Override
+		void writeRow(ResultSet rs) throws SQLException, IOException {
+			writer.write(Long.toString(rs.getLong(1)));
+			for(int column = 2; column <= COLUMNS.length; column++) {
+				writer.write(',');
+				Object value = rs.getObject(column);
+				if(value != null) {
+					writer.write(escape(value.toString()));
+				}
+			}
+			writer.write("\r\n");
+		}
+		
+		/**
+		 * Campos com vírgula, aspas ou quebra de linha vão entre aspas (RFC 4180).
+		 */
+		static String escape(String value) {
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(c == ',' || c == '"' || c == '\n' || c == '\r') {
+					return '"' + value.replace("\"", "\"\"") + '"';
+				}
+			}
+			return value;
+		}
+	}
+	
+	private static class NdjsonRowWriter extends RowWriter {
+		
+		final JsonGenerator generator;
+		
+		NdjsonRowWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+			super(writer);
+			this.generator = objectMapper.getFactory().createGenerator(writer);
+			this.generator.setRootValueSeparator(new SerializedString("\n"));
+			this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		}
+		
+		@Override
+		void end() throws IOException {
+			if(count > 0) {
+				generator.writeRaw('\n');
+			}
+			generator.flush();
+		}
+		
+		@Override
+		void writeRow(ResultSet rs) throws SQLException, IOException {
+			generator.writeStartObject();
+			generator.writeNumberField(COLUMNS[0], rs.getLong(1));
+			generator.writeStringField(COLUMNS[1], rs.getString(2));
+			generator.writeStringField(COLUMNS[2], rs.getString(3));
+			Date loanDate = rs.getDate(4);
+			generator.writeStringField(COLUMNS[3], loanDate == null ? null : loanDate.toLocalDate().toString());
+			generator.writeBooleanField(COLUMNS[4], rs.getBoolean(5));
+			generator.writeNumberField(COLUMNS[5], rs.getLong(6));
+			generator.writeStringField(COLUMNS[6], rs.getString(7));
+			generator.writeStringField(COLUMNS[7], rs.getString(8));
+			generator.writeStringField(COLUMNS[8], rs.getString(9));
+			generator.writeEndObject();
+		}
+		
+		@Override
+		void write(ResultSet rs) throws SQLException {
+			super.write(rs);
+			try {
+				if(count == 1 || count % FLUSH_EVERY == 0) {
+					generator.flush();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -1,35 +1,135 @@
 package com.br.project.librarybookapi.service.impl;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.br.project.librarybookapi.dto.BulkReturnItemDTO;
+import com.br.project.librarybookapi.dto.BulkReturnResultDTO;
+import com.br.project.librarybookapi.dto.CustomerLateLoanCountDTO;
+import com.br.project.librarybookapi.dto.LateLoanDTO;
+import com.br.project.librarybookapi.dto.LoanStateDTO;
 import com.br.project.librarybookapi.dto.LoanFilterDTO;
 import com.br.project.librarybookapi.exception.BusinessException;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
 import com.br.project.librarybookapi.repository.LoanRepository;
+import com.br.project.librarybookapi.service.BookAvailabilityIndex;
+import com.br.project.librarybookapi.service.CountCache;
 import com.br.project.librarybookapi.service.LoanService;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Service
 public class LoanServiceImpl implements LoanService {
 
+	private static final int BOUNDARIES_PAGE_SIZE = 1000;
+	
+	private static final String OPEN_LOAN_CONSTRAINT = "ux_loan_open_book";
+
 	private LoanRepository repository;
+	
+	private BookAvailabilityIndex availabilityIndex;
+	
+	private CountCache countCache;
+	
+	private final Counter loansCreated;
+	
+	private final Counter loansRejected;
+	
+	private final Counter lateLoans;
 
-	public LoanServiceImpl(LoanRepository repository) {
+	public LoanServiceImpl(LoanRepository repository, BookAvailabilityIndex availabilityIndex, CountCache countCache,
+			MeterRegistry registry) {
 		this.repository = repository;
+		this.availabilityIndex = availabilityIndex;
+		this.countCache = countCache;
+		this.loansCreated = Counter.builder("library.loans.created")
+				.description("Empréstimos gravados")
+				.register(registry);
+		this.loansRejected = Counter.builder("library.loans.rejected")
+				.description("Empréstimos recusados porque o livro já estava emprestado")
+				.register(registry);
+		this.lateLoans = Counter.builder("library.loans.late")
+				.description("Empréstimos atrasados encontrados")
+				.register(registry);
 	}
 	
+	/**
+	 * Reserva o livro no índice sem lock e grava o empréstimo; o índice único
+	 * de loan.open_book_id decide entre instâncias. Se o índice diz que o livro
+	 * está emprestado, confere na base sob o lock do livro, pois a devolução
+	 * pode ter sido feita em outra instância.
+	 */
 	@Override
 	public Loan save(Loan loan) {
-		if(repository.existsByBookAndNotReturned(loan.getBook())) {
+		Long bookId = loan.getBook().getId();
+		if(availabilityIndex.reserve(bookId)) {
+			return insert(loan, bookId);
+		}
+		Lock lock = availabilityIndex.lockFor(bookId);
+		lock.lock();
+		try {
+			if(repository.existsByBookAndNotReturned(loan.getBook())) {
+				loansRejected.increment();
+				throw new BusinessException("Book already loaned");
+			}
+			return insert(loan, bookId);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private Loan insert(Loan loan, Long bookId) {
+		try {
+			Loan saved = repository.save(loan);
+			availabilityIndex.opened(saved.getId(), bookId);
+			loansCreated.increment();
+			return saved;
+		} catch (DataIntegrityViolationException e) {
+			if(!violatesOpenLoan(e)) {
+				availabilityIndex.release(bookId);
+				throw e;
+			}
+			// outra instância emprestou o livro: ele continua marcado
+			loansRejected.increment();
 			throw new BusinessException("Book already loaned");
+		} catch (RuntimeException e) {
+			availabilityIndex.release(bookId);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Só a violação do índice único de empréstimo em aberto por livro quer
+	 * dizer que o livro já está emprestado; as demais são erros de dados.
+	 */
+	private static boolean violatesOpenLoan(DataIntegrityViolationException e) {
+		for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if(cause.getMessage() != null && cause.getMessage().toLowerCase(Locale.ROOT).contains(OPEN_LOAN_CONSTRAINT)) {
+				return true;
+			}
 		}
-		return repository.save(loan);
+		return false;
 	}
 
 	@Override
@@ -39,26 +139,223 @@ public class LoanServiceImpl implements LoanService {
 
 	@Override
 	public Loan update(Loan loan) {
-		// TODO Auto-generated method stub
-		return repository.save(loan);
+		Loan updated = repository.save(loan);
+		if(loan.getBook() != null) {
+			if(Boolean.TRUE.equals(loan.getReturned())) {
+				availabilityIndex.releaseLoan(loan.getId());
+				availabilityIndex.release(loan.getBook().getId());
+			} else {
+				availabilityIndex.reserve(loan.getBook().getId());
+				availabilityIndex.opened(loan.getId(), loan.getBook().getId());
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * O livro não é lido: a devolução o libera no índice de disponibilidade
+	 * pelo id do empréstimo. A reabertura não marca o livro no índice; o
+	 * próximo empréstimo dele esbarra no índice único de open_book_id.
+	 */
+	@Override
+	public boolean updateReturned(Long id, boolean returned) {
+		if(returned) {
+			if(repository.markReturned(id) == 0) {
+				return false;
+			}
+			availabilityIndex.releaseLoan(id);
+			return true;
+		}
+		try {
+			return repository.markNotReturned(id) > 0;
+		} catch (DataIntegrityViolationException e) {
+			if(!violatesOpenLoan(e)) {
+				throw e;
+			}
+			throw new BusinessException("Book already loaned");
+		}
+	}
+
+	/**
+	 * Uma consulta por tipo de item para saber o estado de cada empréstimo e
+	 * um único UPDATE para todos os que estão em aberto, na mesma transação.
+	 * Ids e isbns repetidos, e isbns cujo empréstimo também veio pelo id,
+	 * aparecem uma só vez no resultado. O total de devolvidos é o número de
+	 * linhas alteradas pelo UPDATE: empréstimos devolvidos por outra
+	 * requisição entre a consulta e o UPDATE contam como já devolvidos. Os
+	 * livros devolvidos são liberados no índice de disponibilidade.
+	 */
+	@Override
+	@Transactional
+	public BulkReturnResultDTO returnLoans(List<Long> ids, List<String> isbns) {
+		Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+		Set<String> uniqueIsbns = new LinkedHashSet<>(isbns);
+		Map<Long, LoanStateDTO> byId = new HashMap<>();
+		if(!uniqueIds.isEmpty()) {
+			for(LoanStateDTO state : repository.findStatesByIds(uniqueIds)) {
+				byId.put(state.getLoanId(), state);
+			}
+		}
+		Map<String, LoanStateDTO> openByIsbn = new HashMap<>();
+		if(!uniqueIsbns.isEmpty()) {
+			for(LoanStateDTO state : repository.findOpenStatesByIsbns(uniqueIsbns)) {
+				openByIsbn.put(state.getIsbn(), state);
+			}
+		}
+		
+		BulkReturnResultDTO result = new BulkReturnResultDTO();
+		Set<Long> open = new LinkedHashSet<>();
+		Set<Long> bookIds = new LinkedHashSet<>();
+		for(Long id : uniqueIds) {
+			LoanStateDTO state = byId.get(id);
+			if(state == null) {
+				addItem(result, id, null, BulkReturnItemDTO.Status.NOT_FOUND);
+			} else if(Boolean.TRUE.equals(state.getReturned())) {
+				addItem(result, id, state.getIsbn(), BulkReturnItemDTO.Status.ALREADY_RETURNED);
+			} else {
+				open.add(id);
+				bookIds.add(state.getBookId());
+				addItem(result, id, state.getIsbn(), BulkReturnItemDTO.Status.RETURNED);
+			}
+		}
+		for(String isbn : uniqueIsbns) {
+			LoanStateDTO state = openByIsbn.get(isbn);
+			if(state == null) {
+				addItem(result, null, isbn, BulkReturnItemDTO.Status.NOT_FOUND);
+			} else if(!byId.containsKey(state.getLoanId())) {
+				open.add(state.getLoanId());
+				bookIds.add(state.getBookId());
+				addItem(result, state.getLoanId(), isbn, BulkReturnItemDTO.Status.RETURNED);
+			}
+		}
+		
+		int updated = open.isEmpty() ? 0 : repository.markAllReturned(open);
+		long returnedMeanwhile = open.size() - updated;
+		result.setReturned(result.getReturned() - returnedMeanwhile);
+		result.setAlreadyReturned(result.getAlreadyReturned() + returnedMeanwhile);
+		open.forEach(availabilityIndex::releaseLoan);
+		bookIds.forEach(availabilityIndex::release);
+		return result;
+	}
+	
+	private void addItem(BulkReturnResultDTO result, Long loanId, String isbn, BulkReturnItemDTO.Status status) {
+		result.getItems().add(BulkReturnItemDTO.builder().loanId(loanId).isbn(isbn).status(status).build());
+		switch(status) {
+		case RETURNED:
+			result.setReturned(result.getReturned() + 1);
+			break;
+		case ALREADY_RETURNED:
+			result.setAlreadyReturned(result.getAlreadyReturned() + 1);
+			break;
+		default:
+			result.setNotFound(result.getNotFound() + 1);
+		}
 	}
 
 	@Override
 	public Page<Loan> find(LoanFilterDTO filter, Pageable pageable) {
-		return repository.findBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomer(), pageable);
+		Slice<Loan> slice = findSlice(filter, pageable);
+		long total = countCache.count("loan|" + filter.getIsbn() + "|" + filter.getCustomer(),
+				() -> repository.countBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomer()));
+		return new PageImpl<Loan>(slice.getContent(), pageable, total);
+	}
+
+	@Override
+	public Slice<Loan> findSlice(LoanFilterDTO filter, Pageable pageable) {
+		return repository.findSliceBookIsbnOrCustomer(filter.getIsbn(), filter.getCustomer(), pageable);
+	}
+
+	@Override
+	public Slice<Loan> findAfter(LoanFilterDTO filter, Long afterId, int size) {
+		return repository.findBookIsbnOrCustomerAfter(filter.getIsbn(), filter.getCustomer(), afterId, PageRequest.of(0, size));
 	}
 
 	@Override
 	public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
-		return repository.findByBook(book, pageable);
+		Slice<Loan> slice = getLoanSliceByBook(book, pageable);
+		long total = countCache.count("loan-book|" + book.getId(), () -> repository.countByBook(book));
+		return new PageImpl<Loan>(slice.getContent(), pageable, total);
+	}
+
+	@Override
+	public Slice<Loan> getLoanSliceByBook(Book book, Pageable pageable) {
+		return repository.findSliceByBook(book, pageable);
+	}
+
+	@Override
+	public Slice<Loan> getLoansByBookAfter(Book book, Long afterId, int size) {
+		return repository.findByBookAfter(book, afterId, PageRequest.of(0, size));
 	}
 
 	@Override
 	public List<Loan> getAllLateLoans() {
+		List<Loan> loans = repository.findByLoanDateLessThanNotReturned(lateLoanDate());
+		lateLoans.increment(loans.size());
+		return loans;
+	}
+
+	/**
+	 * O último grupo de cada bloco pode continuar no bloco seguinte, então ele
+	 * só é entregue quando aparece outro email ou quando os atrasos acabam.
+	 */
+	@Override
+	public void processLateLoansByCustomer(int chunkSize, String afterEmail, Long afterId, String toEmail,
+			Consumer<List<List<LateLoanDTO>>> groupsConsumer) {
+		LocalDate threeDaysAgo = lateLoanDate();
+		List<LateLoanDTO> pending = new ArrayList<>();
+		List<LateLoanDTO> chunk;
+		do {
+			chunk = repository.findLateLoansByCustomerAfter(threeDaysAgo, afterEmail, afterId, toEmail, PageRequest.of(0, chunkSize));
+			if(chunk.isEmpty()) {
+				break;
+			}
+			lateLoans.increment(chunk.size());
+			List<List<LateLoanDTO>> groups = new ArrayList<>();
+			for(LateLoanDTO loan : chunk) {
+				if(!pending.isEmpty() && !pending.get(0).getCustomerEmail().equals(loan.getCustomerEmail())) {
+					groups.add(pending);
+					pending = new ArrayList<>();
+				}
+				pending.add(loan);
+			}
+			if(!groups.isEmpty()) {
+				groupsConsumer.accept(groups);
+			}
+			LateLoanDTO last = chunk.get(chunk.size() - 1);
+			afterEmail = last.getCustomerEmail();
+			afterId = last.getLoanId();
+		} while(chunk.size() == chunkSize);
+		if(!pending.isEmpty()) {
+			groupsConsumer.accept(Collections.singletonList(pending));
+		}
+	}
+	
+	@Override
+	public List<String> getLateLoanCustomerBoundaries(int partitionSize) {
+		LocalDate threeDaysAgo = lateLoanDate();
+		List<String> boundaries = new ArrayList<>();
+		String afterEmail = "";
+		long inPartition = partitionSize;
+		List<CustomerLateLoanCountDTO> page;
+		do {
+			page = repository.findLateLoanCountsByCustomerAfter(threeDaysAgo, afterEmail, PageRequest.of(0, BOUNDARIES_PAGE_SIZE));
+			for(CustomerLateLoanCountDTO customer : page) {
+				if(inPartition >= partitionSize) {
+					boundaries.add(boundaries.isEmpty() ? "" : customer.getCustomerEmail());
+					inPartition = 0;
+				}
+				inPartition += customer.getLoans();
+			}
+			if(!page.isEmpty()) {
+				afterEmail = page.get(page.size() - 1).getCustomerEmail();
+			}
+		} while(page.size() == BOUNDARIES_PAGE_SIZE);
+		return boundaries;
+	}
+	
+	private LocalDate lateLoanDate() {
 		final Integer loanDays = 4;
-		LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
-		
-		return repository.findByLoanDateLessThanNotReturned(threeDaysAgo);
+		return LocalDate.now().minusDays(loanDays);
 	}
 	
 
@@ -0,0 +1,35 @@
+create sequence book_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    title varchar(255),
+    author varchar(255),
+    isbn varchar(255),
+    primary key (id)
+);
+
+create table loan (
+    id bigint generated by default as identity,
+    customer varchar(255),
+    customer_email varchar(255),
+    loan_date date,
+    returned boolean,
+    id_book bigint,
+    primary key (id),
+    constraint fk_loan_book foreign key (id_book) references book (id)
+);
+
+create table email_outbox (
+    id bigint generated by default as identity,
+    recipients clob,
+    subject varchar(255),
+    text clob,
+    status varchar(255),
+    attempts integer not null,
+    next_attempt_at timestamp,
+    claim_token varchar(255),
+    last_error varchar(1000),
+    created_at timestamp,
+    sent_at timestamp,
+    primary key (id)
+);
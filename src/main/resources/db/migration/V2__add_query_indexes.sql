@@ -0,0 +1,24 @@
+-- existsByIsbn, findByIsbn, findExistingIsbns e o filtro por isbn dos empréstimos
+create unique index ux_book_isbn on book (isbn);
+
+-- "não devolvido" passa a ser returned = false, que pode usar índice
+update loan set returned = false where returned is null;
+alter table loan alter column returned set default false;
+alter table loan alter column returned set not null;
+
+-- existsByBookAndNotReturned; findByBook* e countByBook usam o índice da
+-- chave estrangeira fk_loan_book
+create index ix_loan_book_returned on loan (id_book, returned);
+
+-- findLateLoansAfter, findByLoanDateLessThanNotReturned, findBookIdsNotReturned
+create index ix_loan_returned_date on loan (returned, loan_date);
+
+-- filtro por cliente dos empréstimos (isbn ou cliente: o H2 não combina dois
+-- índices num OR, mas bases com bitmap/index merge usam este e ux_book_isbn)
+create index ix_loan_customer on loan (customer);
+
+-- findDueIds, claim
+create index ix_email_outbox_status_next_attempt on email_outbox (status, next_attempt_at);
+
+-- findByClaimTokenOrderById
+create index ix_email_outbox_claim_token on email_outbox (claim_token);
@@ -0,0 +1,10 @@
+-- open_book_id repete id_book enquanto o empréstimo está em aberto e fica nulo
+-- depois da devolução. O índice único garante, em qualquer número de
+-- instâncias, no máximo um empréstimo em aberto por livro (nulos não colidem).
+alter table loan add column open_book_id bigint;
+
+update loan l set open_book_id = id_book
+where returned = false
+and id = (select min(o.id) from loan o where o.id_book = l.id_book and o.returned = false);
+
+create unique index ux_loan_open_book on loan (open_book_id);
@@ -0,0 +1,5 @@
+-- version é a coluna de bloqueio otimista do livro e compõe o ETag;
+-- last_modified alimenta o cabeçalho Last-Modified.
+alter table book add column version bigint default 0 not null;
+
+alter table book add column last_modified timestamp default current_timestamp not null;
@@ -0,0 +1,32 @@
+-- Execuções de jobs agendados compartilhadas entre as réplicas. A chave
+-- única de job_run garante que só uma réplica planeja as partições de cada
+-- execução; as demais apenas reservam partições.
+create table job_run (
+    id bigint generated by default as identity,
+    job_name varchar(100) not null,
+    run_date date not null,
+    planned_by varchar(100),
+    planned_at timestamp,
+    primary key (id),
+    constraint ux_job_run unique (job_name, run_date)
+);
+
+-- Cada partição é a faixa [from_key, to_key) de uma execução; to_key nulo é
+-- a última faixa. Uma partição RUNNING com lease_until vencido pertence a
+-- uma réplica que caiu e pode ser reservada por outra.
+create table job_partition (
+    id bigint generated by default as identity,
+    job_name varchar(100) not null,
+    run_date date not null,
+    from_key varchar(255) not null,
+    to_key varchar(255),
+    status varchar(20) not null,
+    owner varchar(100),
+    lease_until timestamp,
+    attempts integer not null,
+    completed_at timestamp,
+    last_error varchar(1000),
+    primary key (id)
+);
+
+create index ix_job_partition_run_status on job_partition (job_name, run_date, status);
@@ -0,0 +1,2 @@
+-- findModifiedAfter: atualização incremental do índice de busca de livros
+create index ix_book_last_modified on book (last_modified);
@@ -0,0 +1,2 @@
+-- última chave gravada de uma partição, para que quem a assumir continue dali
+alter table job_partition add column checkpoint_key varchar(255);
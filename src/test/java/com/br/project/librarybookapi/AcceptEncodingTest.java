@@ -0,0 +1,29 @@
+package com.br.project.librarybookapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class AcceptEncodingTest {
+
+	@Test
+	@DisplayName("Deve aceitar gzip pelo nome, pelo curinga ou com q maior que zero")
+	public void acceptsGzipTest() {
+		assertThat(AcceptEncoding.acceptsGzip("gzip")).isTrue();
+		assertThat(AcceptEncoding.acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+		assertThat(AcceptEncoding.acceptsGzip("br;q=1.0, *;q=0.1")).isTrue();
+		assertThat(AcceptEncoding.acceptsGzip("x-gzip")).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve recusar gzip com q=0, fora da lista ou sem cabeçalho")
+	public void refusesGzipTest() {
+		assertThat(AcceptEncoding.acceptsGzip(null)).isFalse();
+		assertThat(AcceptEncoding.acceptsGzip("gzip;q=0")).isFalse();
+		assertThat(AcceptEncoding.acceptsGzip("gzip; q=0.000, identity")).isFalse();
+		assertThat(AcceptEncoding.acceptsGzip("*;q=1, gzip;q=0")).isFalse();
+		assertThat(AcceptEncoding.acceptsGzip("identity, br")).isFalse();
+		assertThat(AcceptEncoding.acceptsGzip("gzip;q=abc")).isFalse();
+	}
+}
@@ -0,0 +1,169 @@
+package com.br.project.librarybookapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.br.project.librarybookapi.AdaptiveConcurrencyLimit.Priority;
+
+public class AdmissionControlFilterTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	@Test
+	@DisplayName("Deve recusar com 429 e Retry-After quando o cliente esgota o balde")
+	public void rateLimitPerClientTest() throws Exception {
+		AdmissionControlFilter filter = createFilter(2, 10);
+		
+		assertThat(perform(filter, "GET", "/api/books", "app-1", false).getStatus()).isEqualTo(200);
+		assertThat(perform(filter, "GET", "/api/books", "app-1", false).getStatus()).isEqualTo(200);
+		MockHttpServletResponse rejected = perform(filter, "GET", "/api/books", "app-1", false);
+		
+		assertThat(rejected.getStatus()).isEqualTo(429);
+		assertThat(Long.parseLong(rejected.getHeader(HttpHeaders.RETRY_AFTER))).isPositive();
+		assertThat(rejected.getContentAsString()).contains("Too many requests");
+		assertThat(perform(filter, "GET", "/api/books", "app-2", false).getStatus()).isEqualTo(200);
+		assertThat(perform(filter, "GET", "/actuator/health", "app-1", false).getStatus()).isEqualTo(200);
+	}
+	
+	@Test
+	@DisplayName("Deve ignorar o X-Client-Id de quem não é proxy confiável e usar o usuário autenticado")
+	public void clientIdOnlyFromTrustedProxyTest() throws Exception {
+		AdmissionControlFilter filter = createFilter(2, 10);
+		
+		for(int i = 0; i < 2; i++) {
+			MockHttpServletRequest request = request("GET", "/api/books", "random-" + i);
+			request.setRemoteAddr("10.0.0.9");
+			assertThat(perform(filter, request).getStatus()).isEqualTo(200);
+		}
+		MockHttpServletRequest spoofed = request("GET", "/api/books", "random-2");
+		spoofed.setRemoteAddr("10.0.0.9");
+		assertThat(perform(filter, spoofed).getStatus()).isEqualTo(429);
+		
+		MockHttpServletRequest authenticated = request("GET", "/api/books", null);
+		authenticated.setRemoteAddr("10.0.0.9");
+		authenticated.setUserPrincipal(() -> "fulano");
+		assertThat(perform(filter, authenticated).getStatus()).isEqualTo(200);
+	}
+	
+	@Test
+	@DisplayName("Deve recusar exportações com 503 antes das leituras e liberar a vaga ao fim da resposta assíncrona")
+	public void shedLowPriorityFirstTest() throws Exception {
+		AdmissionControlFilter filter = createFilter(100, 2);
+		
+		MockHttpServletRequest export = request("GET", "/api/loans/export", "app-1");
+		export.setAsyncSupported(true);
+		MockHttpServletResponse exportResponse = new MockHttpServletResponse();
+		filter.doFilter(export, exportResponse, new MockFilterChain(servlet(true)));
+		assertThat(export.isAsyncStarted()).isTrue();
+		
+		MockHttpServletResponse busy = perform(filter, "GET", "/api/stream/loans", "app-1", false);
+		assertThat(busy.getStatus()).isEqualTo(503);
+		assertThat(busy.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+		assertThat(perform(filter, "GET", "/api/books", "app-1", false).getStatus()).isEqualTo(200);
+		
+		export.getAsyncContext().complete();
+		assertThat(perform(filter, "GET", "/api/stream/loans", "app-1", false).getStatus()).isEqualTo(200);
+	}
+	
+	@Test
+	@DisplayName("Deve classificar leituras, escritas e operações longas")
+	public void priorityTest() {
+		assertThat(AdmissionControlFilter.priority(request("GET", "/api/books", null))).isEqualTo(Priority.HIGH);
+		assertThat(AdmissionControlFilter.priority(request("POST", "/api/loans", null))).isEqualTo(Priority.NORMAL);
+		assertThat(AdmissionControlFilter.priority(request("PATCH", "/api/loans", null))).isEqualTo(Priority.LOW);
+		assertThat(AdmissionControlFilter.priority(request("POST", "/api/books/import", null))).isEqualTo(Priority.LOW);
+		assertThat(AdmissionControlFilter.priority(request("GET", "/api/loans/export", null))).isEqualTo(Priority.LOW);
+	}
+	
+	@Test
+	@DisplayName("Deve reduzir o limite com respostas lentas e aumentá-lo aos poucos com respostas rápidas")
+	public void adaptiveLimitTest() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 20, 100 * MILLIS, 0);
+		
+		for(int i = 0; i < 10; i++) {
+			assertThat(limit.tryAcquire(Priority.HIGH)).isTrue();
+		}
+		assertThat(limit.tryAcquire(Priority.HIGH)).isFalse();
+		
+		limit.release(500 * MILLIS, true, 1000 * MILLIS);
+		limit.release(500 * MILLIS, true, 1010 * MILLIS);
+		assertThat(limit.getLimit()).isEqualTo(9);
+		limit.release(500 * MILLIS, true, 1100 * MILLIS);
+		assertThat(limit.getLimit()).isEqualTo(8);
+		
+		for(int i = 0; i < 7; i++) {
+			limit.release(10 * MILLIS, true, 2000 * MILLIS);
+		}
+		assertThat(limit.getInFlight()).isZero();
+		for(int i = 0; i < 4; i++) {
+			assertThat(limit.tryAcquire(Priority.LOW)).isTrue();
+		}
+		assertThat(limit.tryAcquire(Priority.LOW)).isFalse();
+		assertThat(limit.tryAcquire(Priority.HIGH)).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve repor os tokens conforme a taxa")
+	public void tokenBucketTest() {
+		TokenBucket bucket = new TokenBucket(2, 10, 0);
+		
+		assertThat(bucket.tryConsume(0)).isZero();
+		assertThat(bucket.tryConsume(0)).isZero();
+		assertThat(bucket.tryConsume(0)).isEqualTo(100 * MILLIS);
+		assertThat(bucket.tryConsume(100 * MILLIS)).isZero();
+	}
+	
+	private static AdmissionControlFilter createFilter(double burst, int initialLimit) {
+		return new AdmissionControlFilter("X-Client-Id", new String[] {"127.0.0.1"}, 0.1, burst, initialLimit, 1, 10,
+				Duration.ofMillis(500), Duration.ofSeconds(1));
+	}
+	
+	private static MockHttpServletResponse perform(AdmissionControlFilter filter, String method, String uri,
+			String client, boolean async) throws Exception {
+		MockHttpServletRequest request = request(method, uri, client);
+		request.setAsyncSupported(async);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain(servlet(async)));
+		return response;
+	}
+	
+	private static MockHttpServletResponse perform(AdmissionControlFilter filter, MockHttpServletRequest request) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain(servlet(false)));
+		return response;
+	}
+	
+	private static MockHttpServletRequest request(String method, String uri, String client) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+		if(client != null) {
+			request.addHeader("X-Client-Id", client);
+		}
+		return request;
+	}
+	
+	private static HttpServlet servlet(boolean async) {
+		return new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+				if(async) {
+					req.startAsync();
+				}
+				resp.setStatus(200);
+			}
+		};
+	}
+}
@@ -0,0 +1,97 @@
+package com.br.project.librarybookapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+public class CompressedPageCacheFilterTest {
+
+	CompressedPageCacheFilter filter;
+	
+	AtomicInteger rendered;
+	
+	@BeforeEach
+	public void setUp() {
+		filter = new CompressedPageCacheFilter(DataSize.ofMegabytes(1), Duration.ofMinutes(1), DataSize.ofKilobytes(1));
+		rendered = new AtomicInteger();
+	}
+	
+	@Test
+	@DisplayName("Deve servir a página grande compactada e reaproveitar o gzip para o mesmo ETag")
+	public void compressAndCachePageTest() throws Exception {
+		String body = page('a', 4000);
+		
+		MockHttpServletResponse first = perform("/api/books", "gzip, deflate", "\"1\"", body);
+		MockHttpServletResponse second = perform("/api/books", "gzip", "\"1\"", page('b', 4000));
+		
+		assertThat(first.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		assertThat(first.getHeader(HttpHeaders.ETAG)).isEqualTo("W/\"1\"");
+		assertThat(first.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+		assertThat(first.getContentAsByteArray().length).isLessThan(body.length());
+		assertThat(gunzip(first.getContentAsByteArray())).isEqualTo(body);
+		assertThat(second.getContentAsByteArray()).isEqualTo(first.getContentAsByteArray());
+		assertThat(rendered.get()).isEqualTo(2);
+	}
+	
+	@Test
+	@DisplayName("Não deve compactar sem gzip no Accept-Encoding, sem ETag, páginas pequenas ou outros caminhos")
+	public void passThroughTest() throws Exception {
+		String body = page('a', 4000);
+		
+		assertThat(perform("/api/books", "gzip;q=0", "\"1\"", body).getContentAsString()).isEqualTo(body);
+		assertThat(perform("/api/books", "gzip", null, body).getContentAsString()).isEqualTo(body);
+		assertThat(perform("/api/books", "gzip", "\"1\"", "{}").getContentAsString()).isEqualTo("{}");
+		assertThat(perform("/api/loans/export", "gzip", "\"1\"", body).getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+	}
+	
+	private MockHttpServletResponse perform(String uri, String acceptEncoding, String etag, String body) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+		request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		HttpServlet servlet = new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+				rendered.incrementAndGet();
+				resp.setContentType(MediaType.APPLICATION_JSON_VALUE);
+				if(etag != null) {
+					resp.setHeader(HttpHeaders.ETAG, etag);
+				}
+				resp.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+		filter.doFilter(request, response, new MockFilterChain(servlet));
+		return response;
+	}
+	
+	private static String page(char letter, int size) {
+		StringBuilder page = new StringBuilder("{\"content\":\"");
+		for(int i = 0; i < size; i++) {
+			page.append(letter);
+		}
+		return page.append("\"}").toString();
+	}
+	
+	private static String gunzip(byte[] content) throws IOException {
+		return StreamUtils.copyToString(new GZIPInputStream(new ByteArrayInputStream(content)), StandardCharsets.UTF_8);
+	}
+}
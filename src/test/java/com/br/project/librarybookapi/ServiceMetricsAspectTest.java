@@ -0,0 +1,62 @@
+package com.br.project.librarybookapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.service.BookService;
+import com.br.project.librarybookapi.service.impl.BookServiceImpl;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ServiceMetricsAspectTest {
+
+	SimpleMeterRegistry registry;
+	
+	BookRepository repository;
+	
+	BookService service;
+	
+	@BeforeEach
+	public void setUp() {
+		registry = new SimpleMeterRegistry();
+		repository = Mockito.mock(BookRepository.class);
+		AspectJProxyFactory factory = new AspectJProxyFactory(new BookServiceImpl(repository));
+		factory.addAspect(new ServiceMetricsAspect(registry));
+		service = factory.getProxy();
+	}
+	
+	@Test
+	@DisplayName("Deve medir o tempo de cada método do serviço")
+	public void timeServiceMethodTest() {
+		Mockito.when(repository.findById(1L)).thenReturn(Optional.of(Book.builder().id(1L).build()));
+		
+		service.getById(1L);
+		service.getById(1L);
+		
+		Timer timer = registry.find(ServiceMetricsAspect.METRIC)
+				.tag("class", "BookServiceImpl").tag("method", "getById").tag("exception", "none").timer();
+		assertThat(timer).isNotNull();
+		assertThat(timer.count()).isEqualTo(2);
+	}
+	
+	@Test
+	@DisplayName("Deve marcar a exceção lançada pelo método do serviço")
+	public void timeServiceExceptionTest() {
+		Throwable exception = catchThrowable(() -> service.update(new Book()));
+		
+		assertThat(exception).isInstanceOf(IllegalArgumentException.class);
+		assertThat(registry.find(ServiceMetricsAspect.METRIC)
+				.tag("method", "update").tag("exception", "IllegalArgumentException").timer().count()).isEqualTo(1);
+	}
+}
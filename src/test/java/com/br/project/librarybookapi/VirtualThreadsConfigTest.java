@@ -0,0 +1,52 @@
+package com.br.project.librarybookapi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.task.TaskSchedulingAutoConfiguration;
+import org.springframework.boot.task.TaskSchedulerCustomizer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+public class VirtualThreadsConfigTest {
+
+	ApplicationContextRunner runner = new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(TaskSchedulingAutoConfiguration.class))
+			.withUserConfiguration(Scheduling.class, VirtualThreadsConfig.class);
+	
+	@Test
+	@DisplayName("Deve manter as threads de plataforma quando o modo virtual não estiver ligado")
+	public void platformThreadsByDefaultTest() {
+		runner.run(context -> {
+			assertThat(context).doesNotHaveBean(TomcatProtocolHandlerCustomizer.class);
+			assertThat(context).doesNotHaveBean(TaskSchedulerCustomizer.class);
+		});
+	}
+	
+	@Test
+	@DisplayName("Deve rodar o agendador em threads virtuais no Java 21 ou falhar na inicialização antes dele")
+	public void virtualThreadsTest() {
+		runner.withPropertyValues("library.threads.virtual=true").run(context -> {
+			if(!VirtualThreads.isSupported()) {
+				assertThat(context).hasFailed();
+				assertThat(context.getStartupFailure()).hasRootCauseMessage("library.threads.virtual=true exige Java 21 ou superior");
+				return;
+			}
+			assertThat(context).hasSingleBean(TomcatProtocolHandlerCustomizer.class);
+			Thread thread = context.getBean(ThreadPoolTaskScheduler.class).getScheduledExecutor()
+					.submit(Thread::currentThread).get();
+			assertThat(thread.getName()).startsWith("scheduling-vt-");
+			assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+		});
+	}
+	
+	@Configuration
+	@EnableScheduling
+	static class Scheduling {
+	}
+}
@@ -1,9 +1,14 @@
 package com.br.project.librarybookapi.api.resource;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -17,29 +22,43 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MockMvcBuilder;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import com.br.project.librarybookapi.BinaryFormatsConfig;
 import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.BookImportErrorDTO;
+import com.br.project.librarybookapi.dto.BookImportResultDTO;
+import com.br.project.librarybookapi.dto.BookVersionDTO;
 import com.br.project.librarybookapi.exception.BusinessException;
 import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
 import com.br.project.librarybookapi.resource.BookController;
+import com.br.project.librarybookapi.service.BookImportService;
 import com.br.project.librarybookapi.service.BookService;
 import com.br.project.librarybookapi.service.LoanService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @WebMvcTest(controllers = BookController.class)
 @AutoConfigureMockMvc
+@Import(BinaryFormatsConfig.class)
 public class BookControllerTest {
 
 	static String BOOK_API = "/api/books";
@@ -52,6 +71,9 @@ public class BookControllerTest {
 	@MockBean
 	LoanService loanService;
 	
+	@MockBean
+	BookImportService importService;
+	
 	@Test
 	@DisplayName("Deve criar um livro com sucesso.")
 	public void createBookTest()  throws Exception{
@@ -138,6 +160,45 @@ public class BookControllerTest {
 	}
 	
 	
+	@Test
+	@DisplayName("deve enviar ETag e Last-Modified com a versão do livro")
+	public void getBookWithETagTest() throws Exception{
+		Instant lastModified = Instant.parse("2022-05-10T10:15:30Z");
+		Book book = Book.builder().id(1L).title("Livro").author("Autor").isbn("123").version(3L).lastModified(lastModified).build();
+		BDDMockito.given(bookService.getById(1L)).willReturn(Optional.of(book));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON))
+		.andExpect(status().isOk())
+		.andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+		.andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, lastModified.toEpochMilli()));
+	}
+	
+	@Test
+	@DisplayName("deve responder 304 sem carregar o livro quando o ETag ainda vale")
+	public void getBookNotModifiedTest() throws Exception{
+		BDDMockito.given(bookService.getVersion(1L)).willReturn(Optional.of(new BookVersionDTO(3L, Instant.now())));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+		.andExpect(status().isNotModified())
+		.andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+		.andExpect(content().string(""));
+		
+		Mockito.verify(bookService, Mockito.never()).getById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("deve retornar o livro quando o ETag do cliente está desatualizado")
+	public void getBookModifiedTest() throws Exception{
+		Book book = Book.builder().id(1L).title("Livro").author("Autor").isbn("123").version(4L).build();
+		BDDMockito.given(bookService.getVersion(1L)).willReturn(Optional.of(new BookVersionDTO(4L, Instant.now())));
+		BDDMockito.given(bookService.getById(1L)).willReturn(Optional.of(book));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+		.andExpect(status().isOk())
+		.andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+		.andExpect(jsonPath("title").value("Livro"));
+	}
+	
 	@Test
 	@DisplayName("deve retornar resource not found quando o livro procurado não existe")
 	public void BookNotFoundTest() throws Exception{
@@ -181,21 +242,11 @@ public class BookControllerTest {
 		
 		String json = new ObjectMapper().writeValueAsString(createNewBook());
 		
-		Book book = Book.builder()
-				.id((long) 11)
-				.title("As tranças do rei careca")
-				.author("José de Abreu")
-				.isbn("321")
-				.build();
-		
-		BDDMockito.given(bookService.getById(id)).willReturn(Optional.of(book));
-		
-		Book updatedBook = Book.builder().id(id).author("Artur").title("A volta dos que não foram").build();
-		
-		BDDMockito.given(bookService.update(book)).willReturn(updatedBook);
+		BDDMockito.given(bookService.updateDetails(id, createNewBook().getTitle(), createNewBook().getAuthor(), null))
+		.willReturn(Optional.of(Book.builder().id(id).title(createNewBook().getTitle()).author(createNewBook().getAuthor()).isbn("321").build()));
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
-				.put(BOOK_API.concat("/"+1))
+				.put(BOOK_API.concat("/"+id))
 				.content(json)
 				.accept(MediaType.APPLICATION_JSON)
 				.contentType(MediaType.APPLICATION_JSON);
@@ -207,6 +258,44 @@ public class BookControllerTest {
 		.andExpect(jsonPath("author").value(createNewBook().getAuthor()))
 		.andExpect(jsonPath("isbn").value("321"));
 		
+		Mockito.verify(bookService, Mockito.never()).getById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("Deve recusar a atualização quando o If-Match não é a versão atual do livro")
+	public void updateBookPreconditionFailedTest() throws Exception{
+		String json = new ObjectMapper().writeValueAsString(createNewBook());
+		BDDMockito.given(bookService.updateDetails(Mockito.eq(1L), Mockito.anyString(), Mockito.anyString(), Mockito.eq(1L))).willReturn(Optional.empty());
+		BDDMockito.given(bookService.getVersion(1L)).willReturn(Optional.of(new BookVersionDTO(2L, Instant.now())));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.put(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_MATCH, "\"1\"")
+				.content(json)
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+		.andExpect(status().isPreconditionFailed());
+	}
+	
+	@Test
+	@DisplayName("Deve atualizar o livro quando o If-Match é a versão atual")
+	public void updateBookIfMatchTest() throws Exception{
+		String json = new ObjectMapper().writeValueAsString(createNewBook());
+		BDDMockito.given(bookService.updateDetails(Mockito.eq(1L), Mockito.anyString(), Mockito.anyString(), Mockito.eq(2L))).willReturn(Optional.of(Book.builder().id(1L).title("A volta dos que não foram").author("Artur").isbn("123").build()));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.put(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_MATCH, "\"2\"")
+				.content(json)
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+		.andExpect(jsonPath("title").value(createNewBook().getTitle()));
 	}
 	
 	@Test
@@ -256,6 +345,175 @@ public class BookControllerTest {
 		.andExpect(jsonPath("pageable.pageNumber").value(0));
 	}
 	
+	@Test
+	@DisplayName("deve filtrar os livros em CBOR com a página enxuta")
+	public void findBookCborTest() throws Exception{
+		Book book = Book.builder().id(11L).title("As tranças do rei careca").author("José de Abreu").isbn("321").build();
+		
+		BDDMockito.given(bookService.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+		.willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 100), 1));
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders
+				.get(BOOK_API.concat("?page=0&size=100"))
+				.accept(MediaType.APPLICATION_CBOR))
+		.andExpect(status().isOk())
+		.andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+		.andReturn();
+		
+		JsonNode page = new ObjectMapper(new CBORFactory()).readTree(result.getResponse().getContentAsByteArray());
+		assertThat(page.get("content").get(0).get("isbn").asText()).isEqualTo("321");
+		assertThat(page.get("totalElements").asLong()).isEqualTo(1);
+		assertThat(page.get("size").asInt()).isEqualTo(100);
+		assertThat(page.has("pageable")).isFalse();
+		assertThat(page.has("sort")).isFalse();
+	}
+	
+	@Test
+	@DisplayName("deve responder 304 para a mesma página de livros")
+	public void findBookNotModifiedTest() throws Exception{
+		Book book = Book.builder().id(11L).title("Livro").author("Autor").isbn("321").version(1L).build();
+		BDDMockito.given(bookService.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+		.willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 20), 1));
+		
+		String etag = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")).header(HttpHeaders.IF_NONE_MATCH, etag))
+		.andExpect(status().isNotModified());
+		
+		book.setTitle("Livro revisado");
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")).header(HttpHeaders.IF_NONE_MATCH, etag))
+		.andExpect(status().isOk());
+	}
+	
+	@Test
+	@DisplayName("deve enviar ETags diferentes e Vary: Accept para JSON e CBOR da mesma página")
+	public void findBookETagPerFormatTest() throws Exception{
+		Book book = Book.builder().id(11L).title("Livro").author("Autor").isbn("321").build();
+		BDDMockito.given(bookService.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+		.willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 20), 1));
+		
+		MockHttpServletResponse json = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(header().stringValues(HttpHeaders.VARY, Matchers.hasItem(HttpHeaders.ACCEPT)))
+				.andReturn().getResponse();
+		MockHttpServletResponse cbor = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")).accept(MediaType.APPLICATION_CBOR))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+				.andReturn().getResponse();
+		
+		assertThat(cbor.getHeader(HttpHeaders.ETAG)).isNotEqualTo(json.getHeader(HttpHeaders.ETAG));
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")).accept(MediaType.APPLICATION_CBOR)
+				.header(HttpHeaders.IF_NONE_MATCH, json.getHeader(HttpHeaders.ETAG)))
+		.andExpect(status().isOk());
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=Livro")).accept(MediaType.APPLICATION_CBOR)
+				.header(HttpHeaders.IF_NONE_MATCH, cbor.getHeader(HttpHeaders.ETAG)))
+		.andExpect(status().isNotModified())
+		.andExpect(header().stringValues(HttpHeaders.VARY, Matchers.hasItem(HttpHeaders.ACCEPT)));
+	}
+	
+	@Test
+	@DisplayName("deve enviar o ETag da versão com o formato da resposta")
+	public void getBookETagPerFormatTest() throws Exception{
+		BDDMockito.given(bookService.getVersion(1L)).willReturn(Optional.of(new BookVersionDTO(3L, Instant.now())));
+		BDDMockito.given(bookService.getById(1L)).willReturn(Optional.of(
+				Book.builder().id(1L).title("Livro").author("Autor").isbn("123").version(3L).build()));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_CBOR)
+				.header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+		.andExpect(status().isOk())
+		.andExpect(header().string(HttpHeaders.ETAG, "\"3+cbor\""));
+		
+		mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_MATCH, "\"3+cbor\"")
+				.content(new ObjectMapper().writeValueAsString(createNewBook()))
+				.contentType(MediaType.APPLICATION_JSON));
+		Mockito.verify(bookService).updateDetails(Mockito.eq(1L), Mockito.anyString(), Mockito.anyString(), Mockito.eq(3L));
+	}
+	
+	@Test
+	@DisplayName("deve filtrar os livros por cursor sem contar o total")
+	public void findBookByCursorTest() throws Exception{
+		Book book = Book.builder()
+				.id((long) 11)
+				.title("As tranças do rei careca")
+				.author("José de Abreu")
+				.isbn("321")
+				.build();
+		
+		BDDMockito.given(bookService.findAfter(Mockito.any(Book.class), Mockito.isNull(), Mockito.eq(1)))
+		.willReturn(new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 1), true));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?title=rei&cursor=&size=1"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("content", Matchers.hasSize(1)))
+		.andExpect(jsonPath("size").value(1))
+		.andExpect(jsonPath("next").isNotEmpty())
+		.andExpect(jsonPath("totalElements").doesNotExist());
+		
+		Mockito.verify(bookService, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("deve retornar bad request para cursor inválido")
+	public void findBookByInvalidCursorTest() throws Exception{
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?cursor=invalido"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+		.andExpect(status().isBadRequest());
+	}
+	
+	@Test
+	@DisplayName("deve importar livros de um CSV")
+	public void importBooksCsvTest() throws Exception{
+		BDDMockito.given(importService.importBooks(Mockito.any(), Mockito.eq(BookImportService.Format.CSV)))
+		.willReturn(BookImportResultDTO.builder().imported(2).rejected(1)
+				.errors(Arrays.asList(BookImportErrorDTO.builder().line(3).isbn("123").message("Isbn já cadastrado").build()))
+				.build());
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API.concat("/import"))
+				.contentType("text/csv")
+				.accept(MediaType.APPLICATION_JSON)
+				.content("title,author,isbn\nA,B,123\nC,D,123\nE,F,456\n");
+		
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("imported").value(2))
+		.andExpect(jsonPath("rejected").value(1))
+		.andExpect(jsonPath("errors[0].line").value(3));
+	}
+	
+	@Test
+	@DisplayName("deve listar os empréstimos de um livro")
+	public void loansByBookTest() throws Exception{
+		Book book = Book.builder().id((long) 11).title("As tranças do rei careca").author("José de Abreu").isbn("321").build();
+		Loan loan = Loan.builder().id((long) 1).customer("Fulano").customerEmail("fulano@email.com").loanDate(LocalDate.now()).book(book).build();
+		
+		BDDMockito.given(bookService.getById(book.getId())).willReturn(Optional.of(book));
+		BDDMockito.given(loanService.getLoansByBook(Mockito.eq(book), Mockito.any(Pageable.class)))
+		.willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/11/loans?page=0&size=10"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("content", Matchers.hasSize(1)))
+		.andExpect(jsonPath("content[0].id").value(1))
+		.andExpect(jsonPath("content[0].customer").value("Fulano"))
+		.andExpect(jsonPath("content[0].email").value("fulano@email.com"))
+		.andExpect(jsonPath("content[0].book.isbn").value("321"))
+		.andExpect(jsonPath("totalElements").value(1));
+	}
+	
 	private static BookDTO createNewBook() {
 		return BookDTO.builder().author("Artur").title("A volta dos que não foram").isbn("123").build();
 	}
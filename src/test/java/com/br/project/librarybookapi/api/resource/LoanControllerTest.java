@@ -1,13 +1,22 @@
 package com.br.project.librarybookapi.api.resource;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
@@ -22,14 +31,22 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.StreamUtils;
 
+import com.br.project.librarybookapi.dto.BulkReturnDTO;
+import com.br.project.librarybookapi.dto.BulkReturnItemDTO;
+import com.br.project.librarybookapi.dto.BulkReturnResultDTO;
 import com.br.project.librarybookapi.dto.LoanDTO;
+import com.br.project.librarybookapi.dto.LoanExportFilterDTO;
 import com.br.project.librarybookapi.dto.LoanFilterDTO;
 import com.br.project.librarybookapi.dto.ReturnedLoanDTO;
 import com.br.project.librarybookapi.exception.BusinessException;
@@ -37,6 +54,7 @@ import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
 import com.br.project.librarybookapi.resource.LoanController;
 import com.br.project.librarybookapi.service.BookService;
+import com.br.project.librarybookapi.service.LoanExportService;
 import com.br.project.librarybookapi.service.LoanService;
 import com.br.project.librarybookapi.service.LoanServiceTest;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -58,6 +76,9 @@ public class LoanControllerTest {
 	@MockBean
 	private BookService bookService;
 	
+	@MockBean
+	LoanExportService exportService;
+	
 	@Test
 	@DisplayName("Deve realizar um emprestimo")
 	public void createLoanTest() throws Exception{
@@ -132,9 +153,7 @@ public class LoanControllerTest {
 		ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
 		
 		
-		Loan loan = Loan.builder().id((long) 11).build();
-		
-		BDDMockito.given(loanService.getById(Mockito.anyLong())).willReturn(Optional.of(loan));
+		BDDMockito.given(loanService.updateReturned(1L, true)).willReturn(true);
 		
 		String json = new ObjectMapper().writeValueAsString(dto);
 		
@@ -146,7 +165,8 @@ public class LoanControllerTest {
 				).andExpect(status().isOk());
 	
 	
-		Mockito.verify(loanService, Mockito.times(1)).update(loan);
+		Mockito.verify(loanService, Mockito.times(1)).updateReturned(1L, true);
+		Mockito.verify(loanService, Mockito.never()).getById(Mockito.anyLong());
 	}
 	
 	@Test
@@ -154,7 +174,7 @@ public class LoanControllerTest {
 	public void returnInexistentBookTest() throws Exception {
 		ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
 		
-		BDDMockito.given(loanService.getById(Mockito.anyLong())).willReturn(Optional.empty());
+		BDDMockito.given(loanService.updateReturned(Mockito.anyLong(), Mockito.anyBoolean())).willReturn(false);
 		
 		String json = new ObjectMapper().writeValueAsString(dto);
 		
@@ -168,6 +188,49 @@ public class LoanControllerTest {
 	
 	}
 	
+	@Test
+	@DisplayName("Deve devolver vários livros em uma única requisição")
+	public void returnBooksTest() throws Exception {
+		BulkReturnDTO dto = BulkReturnDTO.builder().ids(Arrays.asList(1L, 2L)).isbns(Arrays.asList("123")).build();
+		BulkReturnResultDTO result = BulkReturnResultDTO.builder().returned(2).notFound(1).items(Arrays.asList(
+				BulkReturnItemDTO.builder().loanId(1L).isbn("321").status(BulkReturnItemDTO.Status.RETURNED).build(),
+				BulkReturnItemDTO.builder().loanId(2L).status(BulkReturnItemDTO.Status.NOT_FOUND).build(),
+				BulkReturnItemDTO.builder().loanId(5L).isbn("123").status(BulkReturnItemDTO.Status.RETURNED).build()))
+				.build();
+		
+		BDDMockito.given(loanService.returnLoans(Arrays.asList(1L, 2L), Arrays.asList("123"))).willReturn(result);
+		
+		mvc.perform(
+				patch(LOAN_API)
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(new ObjectMapper().writeValueAsString(dto))
+				).andExpect(status().isOk())
+				.andExpect(jsonPath("returned").value(2))
+				.andExpect(jsonPath("notFound").value(1))
+				.andExpect(jsonPath("items", Matchers.hasSize(3)))
+				.andExpect(jsonPath("items[1].status").value("NOT_FOUND"));
+	}
+	
+	@Test
+	@DisplayName("Deve recusar uma devolução em lote acima do limite")
+	public void returnTooManyBooksTest() throws Exception {
+		List<Long> ids = new ArrayList<>();
+		for(long id = 0; id <= LoanController.MAX_BULK_RETURN_ITEMS; id++) {
+			ids.add(id);
+		}
+		BulkReturnDTO dto = BulkReturnDTO.builder().ids(ids).build();
+		
+		mvc.perform(
+				patch(LOAN_API)
+				.accept(MediaType.APPLICATION_JSON)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(new ObjectMapper().writeValueAsString(dto))
+				).andExpect(status().isBadRequest());
+		
+		Mockito.verify(loanService, Mockito.never()).returnLoans(Mockito.anyList(), Mockito.anyList());
+	}
+	
 	@Test
 	@DisplayName("deve filtrar os empréstimo")
 	public void findLoansTest() throws Exception{
@@ -191,6 +254,71 @@ public class LoanControllerTest {
 		.andExpect(jsonPath("pageable.pageNumber").value(0));
 	}
 	
+	@Test
+	@DisplayName("deve filtrar os empréstimos sem contar o total")
+	public void findLoansSliceTest() throws Exception{
+		Loan loan = LoanServiceTest.createLoan();
+		loan.setBook(Book.builder().id((long)11).isbn("123").build());
+		BDDMockito.given(loanService.findSlice(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
+		.willReturn(new SliceImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 1), true));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?customer=Fulano&page=0&size=1&count=false"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("content", Matchers.hasSize(1)))
+		.andExpect(jsonPath("hasNext").value(true))
+		.andExpect(jsonPath("totalElements").doesNotExist());
+		
+		Mockito.verify(loanService, Mockito.never()).find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class));
+	}
 	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em NDJSON compactado com gzip")
+	public void exportLoansTest() throws Exception {
+		BDDMockito.willAnswer(invocation -> {
+			invocation.getArgument(2, OutputStream.class).write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+			return 1L;
+		}).given(exportService).export(Mockito.any(LoanExportFilterDTO.class), Mockito.eq(LoanExportService.Format.NDJSON), Mockito.any(OutputStream.class));
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "/export?format=ndjson&isbn=123&from=2022-01-01")
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult(5000);
+		
+		assertThat(result.getResponse().getContentType()).startsWith(MediaType.APPLICATION_NDJSON_VALUE);
+		assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+		assertThat(StreamUtils.copyToString(body, StandardCharsets.UTF_8)).isEqualTo("{\"id\":1}\n");
+		Mockito.verify(exportService).export(Mockito.argThat(filter -> "123".equals(filter.getIsbn()) && LocalDate.of(2022, 1, 1).equals(filter.getFrom())),
+				Mockito.eq(LoanExportService.Format.NDJSON), Mockito.any(OutputStream.class));
+	}
+	
+	@Test
+	@DisplayName("Não deve compactar a exportação quando o cliente recusa gzip com q=0")
+	public void exportLoansGzipRefusedTest() throws Exception {
+		BDDMockito.willAnswer(invocation -> {
+			invocation.getArgument(2, OutputStream.class).write("isbn\n".getBytes(StandardCharsets.UTF_8));
+			return 1L;
+		}).given(exportService).export(Mockito.any(LoanExportFilterDTO.class), Mockito.eq(LoanExportService.Format.CSV), Mockito.any(OutputStream.class));
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "/export")
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult(5000);
+		
+		assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+		assertThat(result.getResponse().getContentAsString()).isEqualTo("isbn\n");
+	}
 	
+	@Test
+	@DisplayName("Deve retornar erro ao exportar em formato não suportado")
+	public void exportInvalidFormatTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "/export?format=xml"))
+		.andExpect(status().isBadRequest());
+	}
 }
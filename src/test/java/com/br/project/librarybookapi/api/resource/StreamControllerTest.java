@@ -0,0 +1,91 @@
+package com.br.project.librarybookapi.api.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import com.br.project.librarybookapi.dto.LoanFilterDTO;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.resource.StreamController;
+import com.br.project.librarybookapi.service.BookService;
+import com.br.project.librarybookapi.service.LoanService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@WebMvcTest(controllers = StreamController.class, properties = "library.stream.chunk-size=1")
+@AutoConfigureMockMvc
+public class StreamControllerTest {
+
+	static final String STREAM_API = "/api/stream";
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@MockBean
+	BookService bookService;
+	
+	@MockBean
+	LoanService loanService;
+	
+	@Test
+	@DisplayName("Deve transmitir os livros filtrados em NDJSON, bloco a bloco")
+	public void streamBooksTest() throws Exception {
+		Book first = Book.builder().id((long) 1).title("A volta dos que não foram").author("Artur").isbn("123").build();
+		Book second = Book.builder().id((long) 2).title("A volta do que foi").author("Artur").isbn("456").build();
+		BDDMockito.given(bookService.findAfter(Mockito.any(Book.class), Mockito.isNull(), Mockito.eq(1)))
+		.willReturn(new SliceImpl<Book>(Arrays.asList(first), PageRequest.of(0, 1), true));
+		BDDMockito.given(bookService.findAfter(Mockito.any(Book.class), Mockito.eq(1L), Mockito.eq(1)))
+		.willReturn(new SliceImpl<Book>(Arrays.asList(second), PageRequest.of(0, 1), false));
+		
+		String[] lines = stream(STREAM_API.concat("/books?author=Artur"));
+		
+		assertThat(lines).hasSize(2);
+		assertThat(lines[0]).contains("\"id\":1").contains("\"isbn\":\"123\"");
+		assertThat(lines[1]).contains("\"id\":2");
+		Mockito.verify(bookService).findAfter(Mockito.argThat(filter -> "Artur".equals(filter.getAuthor())), Mockito.isNull(), Mockito.eq(1));
+	}
+	
+	@Test
+	@DisplayName("Deve transmitir os empréstimos filtrados em NDJSON")
+	public void streamLoansTest() throws Exception {
+		Book book = Book.builder().id((long) 1).isbn("123").build();
+		Loan loan = Loan.builder().id((long) 7).customer("Fulano").loanDate(LocalDate.now()).book(book).build();
+		BDDMockito.given(loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.isNull(), Mockito.eq(1)))
+		.willReturn(new SliceImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 1), false));
+		
+		String[] lines = stream(STREAM_API.concat("/loans?customer=Fulano"));
+		
+		assertThat(lines).hasSize(1);
+		assertThat(lines[0]).contains("\"id\":7").contains("\"customer\":\"Fulano\"").contains("\"isbn\":\"123\"");
+	}
+	
+	private String[] stream(String uri) throws Exception {
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(uri).accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		result.getAsyncResult(5000);
+		assertThat(result.getResponse().getContentType()).startsWith(MediaType.APPLICATION_NDJSON_VALUE);
+		return result.getResponse().getContentAsString().split("\n");
+	}
+}
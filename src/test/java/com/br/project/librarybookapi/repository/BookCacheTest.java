@@ -0,0 +1,137 @@
+package com.br.project.librarybookapi.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+
+import javax.cache.CacheManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.project.librarybookapi.HibernateCacheConfig;
+import com.br.project.librarybookapi.model.Book;
+import com.github.benmanes.caffeine.cache.Cache;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Sem transação de teste: o cache de segundo nível só é preenchido e lido
+ * entre transações confirmadas.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(HibernateCacheConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BookCacheTest {
+
+	@Autowired
+	BookRepository repository;
+	
+	@Autowired
+	CacheManager hibernateCacheManager;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	MeterBinder hibernateCacheMetrics;
+	
+	@AfterEach
+	public void tearDown() {
+		repository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve ler o livro do cache de segundo nível e atualizá-lo na alteração")
+	public void cachedByIdTest() {
+		Book book = repository.save(BookRespositoryTest.createNewBook("123"));
+		long hits = region(HibernateCacheConfig.BOOK_REGION).stats().hitCount();
+		
+		repository.findById(book.getId());
+		assertThat(region(HibernateCacheConfig.BOOK_REGION).stats().hitCount()).isGreaterThan(hits);
+		
+		book.setTitle("Outro título");
+		repository.save(book);
+		
+		assertThat(repository.findById(book.getId()).get().getTitle()).isEqualTo("Outro título");
+	}
+	
+	@Test
+	@DisplayName("Não deve ler do cache um livro excluído")
+	public void evictOnDeleteTest() {
+		Book book = repository.save(BookRespositoryTest.createNewBook("123"));
+		assertThat(cache().containsEntity(Book.class, book.getId())).isTrue();
+		
+		repository.delete(book);
+		
+		// READ_WRITE deixa uma trava no lugar do item excluído; o livro não pode mais ser lido do cache.
+		assertThat(repository.findById(book.getId())).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve guardar a consulta por isbn e invalidá-la quando a tabela muda")
+	public void cachedByIsbnTest() {
+		repository.save(BookRespositoryTest.createNewBook("123"));
+		repository.findByIsbn("123");
+		long hits = region(HibernateCacheConfig.BOOK_BY_ISBN_REGION).stats().hitCount();
+		
+		assertThat(repository.findByIsbn("123")).isPresent();
+		assertThat(region(HibernateCacheConfig.BOOK_BY_ISBN_REGION).stats().hitCount()).isGreaterThan(hits);
+		
+		repository.save(BookRespositoryTest.createNewBook("456"));
+		
+		assertThat(repository.findByIsbn("456")).isPresent();
+		assertThat(repository.findByIsbn("123")).isPresent();
+	}
+	
+	@Test
+	@DisplayName("Deve tirar do cache o livro alterado por updateDetails")
+	public void updateDetailsEvictsUpdatedBookTest() {
+		Book book = repository.save(BookRespositoryTest.createNewBook("123"));
+		repository.save(BookRespositoryTest.createNewBook("456"));
+		repository.findByIsbn("123");
+		
+		assertThat(repository.updateDetails(book.getId(), "Outro título", "Fulano", 0L, Instant.now())).contains("123");
+		
+		assertThat(cache().containsEntity(Book.class, book.getId())).isFalse();
+		assertThat(repository.findByIsbn("123").get().getTitle()).isEqualTo("Outro título");
+		assertThat(repository.findByIsbn("456")).isPresent();
+		Book updated = repository.findById(book.getId()).get();
+		assertThat(updated.getTitle()).isEqualTo("Outro título");
+		assertThat(updated.getVersion()).isEqualTo(1L);
+	}
+	
+	@Test
+	@DisplayName("Deve publicar as métricas de cada região do cache")
+	public void metricsTest() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		
+		hibernateCacheMetrics.bindTo(registry);
+		
+		assertThat(registry.find("cache.size").tag("cache", HibernateCacheConfig.BOOK_REGION).gauge()).isNotNull();
+		assertThat(registry.find("cache.evictions").tag("cache", HibernateCacheConfig.BOOK_BY_ISBN_REGION).functionCounter()).isNotNull();
+		assertThat(registry.find("cache.gets").tag("cache", HibernateCacheConfig.BOOK_REGION).tag("result", "hit").functionCounter()).isNotNull();
+	}
+	
+	private Cache<?, ?> region(String name) {
+		return hibernateCacheManager.getCache(name).unwrap(Cache.class);
+	}
+	
+	private org.hibernate.Cache cache() {
+		return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+	}
+}
@@ -1,18 +1,27 @@
 package com.br.project.librarybookapi.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.time.Instant;
 import java.util.Optional;
 
+import javax.persistence.PersistenceException;
+
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.br.project.librarybookapi.dto.BookVersionDTO;
 import com.br.project.librarybookapi.model.Book;
 
 @ExtendWith(SpringExtension.class)
@@ -26,6 +35,17 @@ public class BookRespositoryTest {
 	@Autowired
 	BookRepository repository;
 	
+	@Test
+	@DisplayName("Deve rejeitar na base um segundo livro com o mesmo isbn")
+	public void duplicatedIsbnTest() {
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(createNewBook("123"));
+		
+		Throwable exception = catchThrowable(() -> entityManager.flush());
+		
+		assertThat(exception).isInstanceOf(PersistenceException.class);
+	}
+	
 	@Test
 	@DisplayName("Deve retornar verdadeiro quando existir um livro na base com isbn informado")
 	public void returnTrueWhenIsbnExists() {
@@ -82,6 +102,95 @@ public class BookRespositoryTest {
 		assertThat(deletedBook.getId()).isNull();
 	}
 	
+	@Test
+	@DisplayName("Deve paginar livros por cursor a partir do último id")
+	public void findAfterTest() {
+		Book first = entityManager.persist(createNewBook("123"));
+		Book second = entityManager.persist(createNewBook("456"));
+		Book third = entityManager.persist(createNewBook("789"));
+		
+		Slice<Book> page = repository.findAfter("VOLTA", null, null, null, PageRequest.of(0, 2));
+		
+		assertThat(page.getContent()).containsExactly(first, second);
+		assertThat(page.hasNext()).isTrue();
+		
+		Slice<Book> next = repository.findAfter("VOLTA", null, null, second.getId(), PageRequest.of(0, 2));
+		
+		assertThat(next.getContent()).containsExactly(third);
+		assertThat(next.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros por exemplo sem executar o count")
+	public void findSliceTest() {
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(createNewBook("456"));
+		entityManager.persist(createNewBook("789"));
+		
+		Example<Book> example = Example.of(Book.builder().title("volta").build(), ExampleMatcher.matching()
+				.withIgnoreCase()
+				.withIgnoreNullValues()
+				.withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+		
+		Slice<Book> first = repository.findSlice(example, PageRequest.of(0, 2));
+		Slice<Book> last = repository.findSlice(example, PageRequest.of(1, 2));
+		
+		assertThat(first.getContent()).hasSize(2);
+		assertThat(first.hasNext()).isTrue();
+		assertThat(last.getContent()).hasSize(1);
+		assertThat(last.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve incrementar a versão do livro a cada alteração e consultá-la sem carregar o livro")
+	public void findVersionByIdTest() {
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.flush();
+		
+		book.setTitle("Outro título");
+		entityManager.flush();
+		entityManager.clear();
+		
+		Optional<BookVersionDTO> version = repository.findVersionById(book.getId());
+		
+		assertThat(version).isPresent();
+		assertThat(version.get().getVersion()).isEqualTo(1L);
+		assertThat(version.get().getLastModified()).isNotNull();
+		assertThat(repository.findVersionById(book.getId() + 1)).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve alterar título e autor somente na versão esperada")
+	public void updateDetailsTest() {
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.flush();
+		
+		assertThat(repository.updateDetails(book.getId(), "Outro", "Fulano", 1L, Instant.now())).isEmpty();
+		assertThat(repository.updateDetails(book.getId(), "Outro", "Fulano", 0L, Instant.now())).contains("123");
+		assertThat(repository.updateDetails(book.getId(), "Mais um", "Ciclano", null, Instant.now())).contains("123");
+		assertThat(repository.updateDetails(book.getId() + 1, "Outro", "Fulano", null, Instant.now())).isEmpty();
+		
+		Book updated = entityManager.find(Book.class, book.getId());
+		assertThat(updated.getTitle()).isEqualTo("Mais um");
+		assertThat(updated.getAuthor()).isEqualTo("Ciclano");
+		assertThat(updated.getIsbn()).isEqualTo("123");
+		assertThat(updated.getVersion()).isEqualTo(2L);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar os livros alterados a partir da data informada")
+	public void findModifiedAfterTest() {
+		Book old = entityManager.persist(createNewBook("123"));
+		Book recent = entityManager.persist(createNewBook("456"));
+		entityManager.flush();
+		entityManager.getEntityManager().createNativeQuery("update book set last_modified = :old where id = :id")
+			.setParameter("old", Instant.now().minusSeconds(3600)).setParameter("id", old.getId()).executeUpdate();
+		
+		Slice<Book> result = repository.findModifiedAfter(Instant.now().minusSeconds(60), 0L, PageRequest.of(0, 10));
+		
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(recent.getId());
+	}
+	
 	public static Book createNewBook(String isbn) {
 		return Book.builder().author("Wanderley").title("A volta dos que não foram").isbn(isbn).build();
 	}
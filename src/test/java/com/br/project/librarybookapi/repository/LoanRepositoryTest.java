@@ -1,23 +1,32 @@
 package com.br.project.librarybookapi.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import com.br.project.librarybookapi.api.resource.BookControllerTest;
 import com.br.project.librarybookapi.dto.BookDTO;
+import com.br.project.librarybookapi.dto.CustomerLateLoanCountDTO;
+import com.br.project.librarybookapi.dto.LateLoanDTO;
+import com.br.project.librarybookapi.dto.LoanStateDTO;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
 import com.br.project.librarybookapi.resource.BookController;
@@ -25,9 +34,11 @@ import com.br.project.librarybookapi.service.BookService;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class LoanRepositoryTest {
 
+	private static final long MAX_STATEMENTS_PER_PAGE = 1;
+
 	
 	@Autowired
 	private LoanRepository repository;
@@ -83,8 +94,167 @@ public class LoanRepositoryTest {
 	}
 	
 	
+	@Test
+	@DisplayName("Deve retornar os ids dos livros com empréstimo não devolvido")
+	public void findBookIdsNotReturnedTest(){
+		Loan loan = createAndPersistLoan(LocalDate.now(), "1");
+		Loan returned = createAndPersistLoan(LocalDate.now(), "2");
+		returned.setReturned(true);
+		entityManager.persist(returned);
+		
+		List<Long> result = repository.findBookIdsNotReturned();
+		
+		assertThat(result).containsExactly(loan.getBook().getId());
+	}
+	
+	@Test
+	@DisplayName("Deve retornar o livro de cada empréstimo não devolvido")
+	public void findOpenLoanBookIdsTest(){
+		Loan loan = createAndPersistLoan(LocalDate.now(), "1");
+		Loan returned = createAndPersistLoan(LocalDate.now(), "2");
+		returned.setReturned(true);
+		entityManager.persist(returned);
+		
+		List<Object[]> result = repository.findOpenLoanBookIds();
+		
+		assertThat(result).hasSize(1);
+		assertThat(result.get(0)).containsExactly(loan.getId(), loan.getBook().getId());
+	}
+	
+	@Test
+	@DisplayName("Deve listar empréstimos com seus livros em uma única consulta")
+	public void findLoansWithBooksInSingleStatementTest(){
+		for(int i = 0; i < 5; i++) {
+			Book book = entityManager.persist(BookRespositoryTest.createNewBook("isbn" + i));
+			entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+			entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+		}
+		Book book = entityManager.find(Book.class, entityManager.persist(BookRespositoryTest.createNewBook("123")).getId());
+		entityManager.flush();
+		entityManager.clear();
+		Statistics statistics = statistics();
+		
+		statistics.clear();
+		Slice<Loan> slice = repository.findSliceBookIsbnOrCustomer(null, "Fulano", PageRequest.of(0, 5));
+		slice.getContent().forEach(loan -> loan.getBook().getTitle());
+		assertThat(slice.getContent()).hasSize(5);
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(MAX_STATEMENTS_PER_PAGE);
+		
+		statistics.clear();
+		Slice<Loan> after = repository.findBookIsbnOrCustomerAfter(null, "Fulano", null, PageRequest.of(0, 5));
+		after.getContent().forEach(loan -> loan.getBook().getTitle());
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(MAX_STATEMENTS_PER_PAGE);
+		
+		statistics.clear();
+		Page<Loan> page = repository.findBookIsbnOrCustomer(null, "Fulano", PageRequest.of(0, 20));
+		page.getContent().forEach(loan -> loan.getBook().getTitle());
+		assertThat(page.getContent()).hasSize(10);
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(MAX_STATEMENTS_PER_PAGE);
+		
+		statistics.clear();
+		repository.findSliceByBook(book, PageRequest.of(0, 5)).getContent().forEach(loan -> loan.getBook().getTitle());
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(MAX_STATEMENTS_PER_PAGE);
+	}
+	
+	@Test
+	@DisplayName("Deve devolver o empréstimo com um único UPDATE")
+	public void markReturnedTest(){
+		Loan loan = createAndPersistLoan(LocalDate.now(), "1");
+		entityManager.flush();
+		entityManager.clear();
+		Statistics statistics = statistics();
+		
+		statistics.clear();
+		int updated = repository.markReturned(loan.getId());
+		
+		assertThat(updated).isEqualTo(1);
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		Loan returned = entityManager.find(Loan.class, loan.getId());
+		assertThat(returned.getReturned()).isTrue();
+		assertThat(returned.getOpenBookId()).isNull();
+		assertThat(repository.markReturned(loan.getId() + 100)).isZero();
+	}
+	
+	@Test
+	@DisplayName("Deve recusar reabrir um empréstimo quando o livro já tem outro em aberto")
+	public void markNotReturnedTest(){
+		Loan loan = createAndPersistLoan(LocalDate.now(), "1");
+		loan.setReturned(true);
+		entityManager.flush();
+		
+		assertThat(repository.markNotReturned(loan.getId())).isEqualTo(1);
+		assertThat(entityManager.find(Loan.class, loan.getId()).getOpenBookId()).isEqualTo(loan.getBook().getId());
+		
+		repository.markReturned(loan.getId());
+		entityManager.persist(Loan.builder().book(loan.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		
+		Throwable exception = catchThrowable(() -> repository.markNotReturned(loan.getId()));
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	private Statistics statistics() {
+		return entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+	}
+	
+	@Test
+	@DisplayName("Deve devolver vários empréstimos em um único UPDATE")
+	public void markAllReturnedTest(){
+		Loan first = createAndPersistLoan(LocalDate.now(), "1");
+		Loan second = createAndPersistLoan(LocalDate.now(), "2");
+		Loan returned = createAndPersistLoan(LocalDate.now(), "3");
+		returned.setReturned(true);
+		returned.setOpenBookId(null);
+		entityManager.flush();
+		entityManager.clear();
+		
+		assertThat(repository.findOpenStatesByIsbns(Arrays.asList("2", "3")))
+			.extracting(LoanStateDTO::getLoanId).containsExactly(second.getId());
+		assertThat(repository.findStatesByIds(Arrays.asList(first.getId(), returned.getId())))
+			.extracting(LoanStateDTO::getReturned).containsExactlyInAnyOrder(false, true);
+		
+		Statistics statistics = statistics();
+		statistics.clear();
+		int updated = repository.markAllReturned(Arrays.asList(first.getId(), second.getId(), returned.getId()));
+		
+		assertThat(updated).isEqualTo(2);
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(entityManager.find(Loan.class, first.getId()).getOpenBookId()).isNull();
+		assertThat(entityManager.find(Loan.class, second.getId()).getReturned()).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve paginar os empréstimos atrasados por email do cliente")
+	public void findLateLoansByCustomerAfterTest(){
+		LocalDate lateDate = LocalDate.now().minusDays(5);
+		Loan second = createAndPersistLoan(lateDate, "1");
+		second.setCustomerEmail("b@email.com");
+		Loan first = createAndPersistLoan(lateDate, "2");
+		first.setCustomerEmail("a@email.com");
+		Loan third = createAndPersistLoan(lateDate, "3");
+		third.setCustomerEmail("b@email.com");
+		createAndPersistLoan(lateDate, "4");
+		entityManager.flush();
+		
+		List<LateLoanDTO> page = repository.findLateLoansByCustomerAfter(LocalDate.now().minusDays(4), "", 0L, null, PageRequest.of(0, 2));
+		assertThat(page).extracting(LateLoanDTO::getLoanId).containsExactly(first.getId(), second.getId());
+		
+		page = repository.findLateLoansByCustomerAfter(LocalDate.now().minusDays(4), "b@email.com", second.getId(), null, PageRequest.of(0, 2));
+		assertThat(page).extracting(LateLoanDTO::getLoanId).containsExactly(third.getId());
+		
+		page = repository.findLateLoansByCustomerAfter(LocalDate.now().minusDays(4), "", 0L, "b@email.com", PageRequest.of(0, 10));
+		assertThat(page).extracting(LateLoanDTO::getLoanId).containsExactly(first.getId());
+		assertThat(repository.findLateLoanCountsByCustomerAfter(LocalDate.now().minusDays(4), "", PageRequest.of(0, 10)))
+			.extracting(CustomerLateLoanCountDTO::getLoans).containsExactly(1L, 2L);
+	}
+	
 	public Loan createAndPersistLoan(LocalDate loanDate) {
-		Book book = Book.builder().author("Artur").title("A volta dos que não foram").isbn("123").build();
+		return createAndPersistLoan(loanDate, "123");
+	}
+	
+	public Loan createAndPersistLoan(LocalDate loanDate, String isbn) {
+		Book book = Book.builder().author("Artur").title("A volta dos que não foram").isbn(isbn).build();
 		
 		entityManager.persist(book);
 		
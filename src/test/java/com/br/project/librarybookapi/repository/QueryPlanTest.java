@@ -0,0 +1,146 @@
+package com.br.project.librarybookapi.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.EmailStatus;
+
+/**
+ * Confere no plano do H2 que as consultas dos repositórios usam os índices
+ * criados pelas migrações em db/migration. O SQL é o que o Hibernate gerou
+ * para cada método, capturado pelo {@link CapturingStatementInspector}, de
+ * modo que uma mudança na consulta ou no mapeamento aparece no plano.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.br.project.librarybookapi.repository.QueryPlanTest$CapturingStatementInspector")
+public class QueryPlanTest {
+	
+	@Autowired
+	TestEntityManager entityManager;
+	
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@Autowired
+	EmailOutboxRepository emailOutboxRepository;
+	
+	@BeforeEach
+	public void setUp() {
+		CapturingStatementInspector.statements.clear();
+	}
+	
+	@Test
+	@DisplayName("Deve buscar livro por isbn pelo índice único")
+	public void findByIsbnUsesIndexTest() {
+		bookRepository.findByIsbn("plan-123");
+		assertThat(plan()).contains("UX_BOOK_ISBN: ISBN = ?1");
+		
+		bookRepository.findExistingIsbns(Arrays.asList("plan-123", "plan-456"));
+		assertThat(plan()).contains("UX_BOOK_ISBN: ISBN IN(?1, ?2)");
+	}
+	
+	@Test
+	@DisplayName("Deve verificar empréstimo em aberto do livro pelo índice de livro e devolução")
+	public void existsByBookAndNotReturnedUsesIndexTest() {
+		loanRepository.existsByBookAndNotReturned(book());
+		assertThat(plan()).contains("IX_LOAN_BOOK_RETURNED: ID_BOOK = ?1").doesNotContain("tableScan");
+	}
+	
+	@Test
+	@DisplayName("Deve listar empréstimos do livro pelo índice da chave estrangeira")
+	public void findByBookUsesIndexTest() {
+		loanRepository.findByBookAfter(book(), 0L, PageRequest.of(0, 20));
+		assertThat(plan()).contains("FK_LOAN_BOOK_INDEX").doesNotContain("tableScan");
+	}
+	
+	@Test
+	@DisplayName("Deve buscar empréstimos atrasados e livros emprestados pelo índice de devolução e data")
+	public void lateLoansUseIndexTest() {
+		loanRepository.findLateLoansByCustomerAfter(LocalDate.now().minusDays(4), "", 0L, null, PageRequest.of(0, 500));
+		assertThat(plan()).contains("IX_LOAN_RETURNED_DATE: LOAN_DATE <= ?1").doesNotContain("tableScan");
+		
+		loanRepository.findBookIdsNotReturned();
+		assertThat(plan()).contains("IX_LOAN_RETURNED_DATE: RETURNED = FALSE");
+	}
+	
+	@Test
+	@DisplayName("Deve buscar as mensagens da caixa de saída pelos índices de status e de reserva")
+	public void emailOutboxUsesIndexTest() {
+		emailOutboxRepository.findDueIds(EmailStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, 50));
+		assertThat(plan()).contains("IX_EMAIL_OUTBOX_STATUS_NEXT_ATTEMPT: STATUS = ?1");
+		
+		emailOutboxRepository.findByClaimTokenOrderById("token");
+		assertThat(plan()).contains("IX_EMAIL_OUTBOX_CLAIM_TOKEN: CLAIM_TOKEN = ?1");
+	}
+	
+	private Book book() {
+		return entityManager.persistAndFlush(Book.builder().isbn("plan-1").title("Livro").author("Autor").build());
+	}
+	
+	/**
+	 * Plano da última consulta gerada. Os parâmetros ficam sem valor
+	 * conhecido (null), como no plano que o H2 guarda para o statement
+	 * preparado, e aparecem como ?1, ?2... no resultado.
+	 */
+	private String plan() {
+		List<String> statements = CapturingStatementInspector.statements;
+		assertThat(statements).isNotEmpty();
+		String sql = statements.get(statements.size() - 1);
+		statements.clear();
+		return jdbcTemplate.execute("explain " + sql, (PreparedStatement statement) -> {
+			int parameters = statement.getParameterMetaData().getParameterCount();
+			for(int i = 1; i <= parameters; i++) {
+				statement.setNull(i, Types.NULL);
+			}
+			try(ResultSet result = statement.executeQuery()) {
+				result.next();
+				return result.getString(1);
+			}
+		});
+	}
+	
+	public static class CapturingStatementInspector implements StatementInspector {
+		
+		private static final long serialVersionUID = 1L;
+		
+		static final List<String> statements = new CopyOnWriteArrayList<>();
+		
+		@Override
+		public String inspect(String sql) {
+			if(sql.trim().toLowerCase().startsWith("select")) {
+				statements.add(sql);
+			}
+			return sql;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.br.project.librarybookapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.persistence.EntityManager;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.project.librarybookapi.dto.BookImportResultDTO;
+import com.br.project.librarybookapi.exception.BusinessException;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.service.impl.BookImportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class BookImportServiceTest {
+
+	@Autowired
+	BookRepository repository;
+	
+	@Autowired
+	EntityManager entityManager;
+	
+	@Autowired
+	PlatformTransactionManager transactionManager;
+	
+	BookImportService service;
+	
+	@BeforeEach
+	public void setUp() {
+		this.service = new BookImportServiceImpl(repository, new BookSearchIndex(repository), entityManager, transactionManager, new ObjectMapper(), 2, 10);
+	}
+	
+	@Test
+	@DisplayName("Deve importar livros de um CSV rejeitando isbns repetidos e linhas inválidas")
+	public void importCsvTest() throws Exception {
+		repository.save(Book.builder().title("Existente").author("Autor").isbn("999").build());
+		String csv = "isbn,title,author\n"
+				+ "123,\"Poeira, em alto mar\",Wanderley\n"
+				+ "456,A volta dos que não foram,Artur\n"
+				+ "123,Repetido,Fulano\n"
+				+ "999,Já cadastrado,Fulano\n"
+				+ "789,,Sem título\n";
+		
+		BookImportResultDTO result = service.importBooks(stream(csv), BookImportService.Format.CSV);
+		
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getRejected()).isEqualTo(3);
+		assertThat(result.getErrors()).extracting("line").containsExactly(4L, 5L, 6L);
+		assertThat(repository.findByIsbn("123").get().getTitle()).isEqualTo("Poeira, em alto mar");
+		assertThat(repository.count()).isEqualTo(3);
+	}
+	
+	@Test
+	@DisplayName("Deve importar livros de um NDJSON")
+	public void importNdjsonTest() throws Exception {
+		String ndjson = "{\"title\":\"Poeira em alto mar\",\"author\":\"Wanderley\",\"isbn\":\"123\"}\n"
+				+ "não é json\n"
+				+ "{\"title\":\"A volta dos que não foram\",\"author\":\"Artur\",\"isbn\":\"456\"}\n";
+		
+		BookImportResultDTO result = service.importBooks(stream(ndjson), BookImportService.Format.NDJSON);
+		
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getRejected()).isEqualTo(1);
+		assertThat(result.getErrors().get(0).getLine()).isEqualTo(2);
+		assertThat(repository.existsByIsbn("456")).isTrue();
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@DisplayName("Deve regravar linha a linha o lote que falhar no banco e rejeitar só a linha com problema")
+	public void retryFailedBatchRowByRowTest() throws Exception {
+		StringBuilder longTitle = new StringBuilder();
+		for(int i = 0; i < 300; i++) {
+			longTitle.append('x');
+		}
+		String csv = "isbn,title,author\n"
+				+ "123,Poeira em alto mar,Wanderley\n"
+				+ "456," + longTitle + ",Artur\n"
+				+ "789,A volta dos que não foram,Artur\n";
+		
+		try {
+			BookImportResultDTO result = service.importBooks(stream(csv), BookImportService.Format.CSV);
+			
+			assertThat(result.getImported()).isEqualTo(2);
+			assertThat(result.getRejected()).isEqualTo(1);
+			assertThat(result.getErrors()).extracting("line").containsExactly(3L);
+			assertThat(result.getErrors()).extracting("isbn").containsExactly("456");
+			assertThat(repository.existsByIsbn("123")).isTrue();
+			assertThat(repository.existsByIsbn("789")).isTrue();
+			assertThat(repository.existsByIsbn("456")).isFalse();
+		} finally {
+			repository.deleteAll();
+		}
+	}
+	
+	@Test
+	@DisplayName("Deve recusar CSV sem as colunas obrigatórias")
+	public void invalidCsvHeaderTest() {
+		Throwable exception = Assertions.catchThrowable(() -> service.importBooks(stream("nome,isbn\n"), BookImportService.Format.CSV));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class);
+	}
+	
+	private ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
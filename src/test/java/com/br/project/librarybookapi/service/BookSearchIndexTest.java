@@ -0,0 +1,182 @@
+package com.br.project.librarybookapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.repository.BookRepository;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookSearchIndexTest {
+
+	@MockBean
+	BookRepository repository;
+	
+	BookSearchIndex index;
+	
+	@BeforeEach
+	public void setUp() {
+		index = new BookSearchIndex(repository);
+		index.index(book(1L, "A volta dos que não foram", "Artur", "111"));
+		index.index(book(2L, "Poeira em alto mar", "Wanderley", "222"));
+		index.index(book(3L, "Volta", "Fulano", "333"));
+		index.index(book(4L, "Voltaire e a revolta", "Ciclano", "444"));
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar por trecho do campo ignorando maiúsculas e campos nulos")
+	public void searchContainingIgnoreCaseTest() {
+		Page<Book> result = index.search(Book.builder().title("VOLTA").build(), PageRequest.of(0, 10));
+		
+		assertThat(result.getTotalElements()).isEqualTo(3);
+		assertThat(result.getContent()).extracting(Book::getId).containsExactlyInAnyOrder(1L, 3L, 4L);
+		assertThat(index.search(Book.builder().title("volta").author("artur").build(), PageRequest.of(0, 10)).getContent())
+			.extracting(Book::getId).containsExactly(1L);
+		assertThat(index.search(Book.builder().title("ar").build(), PageRequest.of(0, 10)).getContent())
+			.extracting(Book::getId).containsExactly(2L);
+		assertThat(index.search(Book.builder().title("inexistente").build(), PageRequest.of(0, 10)).getContent()).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve ordenar por relevância quando não houver ordenação pedida")
+	public void rankedSearchTest() {
+		Page<Book> result = index.search(Book.builder().title("volta").build(), PageRequest.of(0, 10));
+		
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(3L, 4L, 1L);
+		
+		Page<Book> sorted = index.search(Book.builder().title("volta").build(), PageRequest.of(0, 10, Sort.by("title")));
+		
+		assertThat(sorted.getContent()).extracting(Book::getId).containsExactly(1L, 3L, 4L);
+	}
+	
+	@Test
+	@DisplayName("Deve paginar todos os livros em ordem de id quando não houver filtro")
+	public void searchWithoutFilterTest() {
+		Page<Book> result = index.search(new Book(), PageRequest.of(1, 2));
+		
+		assertThat(result.getTotalElements()).isEqualTo(4);
+		assertThat(result.getContent()).extracting(Book::getId).containsExactly(3L, 4L);
+	}
+	
+	@Test
+	@DisplayName("Deve refletir a atualização e a remoção de livros")
+	public void updateAndRemoveTest() {
+		index.index(book(3L, "Outro título", "Fulano", "333"));
+		index.remove(4L);
+		
+		assertThat(index.search(Book.builder().title("volta").build(), Pageable.unpaged()).getContent())
+			.extracting(Book::getId).containsExactly(1L);
+		assertThat(index.search(Book.builder().title("outro").build(), Pageable.unpaged()).getContent())
+			.extracting(Book::getId).containsExactly(3L);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar por cursor em ordem de id")
+	public void searchAfterTest() {
+		Slice<Book> first = index.searchAfter(Book.builder().title("volta").build(), null, 2);
+		Slice<Book> next = index.searchAfter(Book.builder().title("volta").build(), 3L, 2);
+		
+		assertThat(first.getContent()).extracting(Book::getId).containsExactly(1L, 3L);
+		assertThat(first.hasNext()).isTrue();
+		assertThat(next.getContent()).extracting(Book::getId).containsExactly(4L);
+		assertThat(next.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve manter os ids em ordem ao indexar fora de ordem e remover do meio")
+	public void outOfOrderPostingsTest() {
+		index.index(book(10L, "Volta ao mundo", "Fulano", "1010"));
+		index.index(book(0L, "Meia volta", "Fulano", "000"));
+		index.index(book(2L, "Volta por cima", "Wanderley", "222"));
+		index.remove(3L);
+		
+		assertThat(index.searchAfter(Book.builder().title("volta").build(), null, 10).getContent())
+			.extracting(Book::getId).containsExactly(0L, 1L, 2L, 4L, 10L);
+		assertThat(index.searchAfter(Book.builder().title("volta").build(), 3L, 10).getContent())
+			.extracting(Book::getId).containsExactly(4L, 10L);
+		assertThat(index.search(Book.builder().title("volta").author("fulano").build(), PageRequest.of(0, 10)).getContent())
+			.extracting(Book::getId).containsExactlyInAnyOrder(0L, 10L);
+	}
+	
+	@Test
+	@DisplayName("Deve carregar o índice a partir da base em blocos")
+	public void rebuildTest() {
+		when(repository.findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.any(Pageable.class)))
+		.thenReturn(new SliceImpl<Book>(Arrays.asList(book(10L, "Dom Casmurro", "Machado", "555")), PageRequest.of(0, 1), true));
+		when(repository.findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.eq(10L), Mockito.any(Pageable.class)))
+		.thenReturn(new SliceImpl<Book>(Arrays.asList(book(11L, "Memórias Póstumas", "Machado", "666")), PageRequest.of(0, 1), false));
+		
+		index.rebuild();
+		
+		assertThat(index.isReady()).isTrue();
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.search(Book.builder().author("machado").build(), PageRequest.of(0, 10)).getTotalElements()).isEqualTo(2);
+	}
+	
+	@Test
+	@DisplayName("Não deve perder alterações feitas durante a recarga do índice")
+	public void writesDuringRebuildTest() {
+		when(repository.findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.any(Pageable.class)))
+		.thenAnswer(invocation -> {
+			// lido da base antes da exclusão do livro 2 e da inclusão do livro 5
+			index.remove(2L);
+			index.index(book(5L, "Iracema", "Alencar", "555"));
+			return new SliceImpl<Book>(Arrays.asList(book(1L, "A volta dos que não foram", "Artur", "111"),
+					book(2L, "Poeira em alto mar", "Wanderley", "222")), PageRequest.of(0, 2), false);
+		});
+		
+		index.rebuild();
+		
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.search(Book.builder().title("poeira").build(), Pageable.unpaged()).getContent()).isEmpty();
+		assertThat(index.search(Book.builder().title("iracema").build(), Pageable.unpaged()).getContent())
+			.extracting(Book::getId).containsExactly(5L);
+	}
+	
+	@Test
+	@DisplayName("Deve aplicar só os livros alterados desde a última atualização")
+	public void incrementalRefreshTest() {
+		when(repository.findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.any(Pageable.class)))
+		.thenReturn(new SliceImpl<Book>(Arrays.asList(book(1L, "A volta dos que não foram", "Artur", "111"),
+				book(2L, "Poeira em alto mar", "Wanderley", "222")), PageRequest.of(0, 2), false));
+		index.rebuild();
+		when(repository.findModifiedAfter(Mockito.any(Instant.class), Mockito.eq(0L), Mockito.any(Pageable.class)))
+		.thenAnswer(invocation -> {
+			// excluído nesta instância depois de lido pela atualização
+			index.remove(1L);
+			return new SliceImpl<Book>(Arrays.asList(book(1L, "A volta dos que não foram", "Artur", "111"),
+					book(6L, "Senhora", "Alencar", "666")), PageRequest.of(0, 2), false);
+		});
+		
+		index.refresh();
+		
+		assertThat(index.search(Book.builder().author("alencar").build(), Pageable.unpaged()).getContent())
+			.extracting(Book::getId).containsExactly(6L);
+		assertThat(index.search(Book.builder().title("volta").build(), Pageable.unpaged()).getContent()).isEmpty();
+		verify(repository, Mockito.times(1)).findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.any(Pageable.class));
+	}
+	
+	private Book book(Long id, String title, String author, String isbn) {
+		return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+	}
+}
@@ -5,6 +5,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +20,10 @@ import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -167,10 +172,9 @@ public class BookServiceTest {
 		
 		List<Book> lista = java.util.Arrays.asList(book);
 		
-		Page<Book> page = new PageImpl<Book>(lista, pageRequest, 1);
-
-		when(repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
-		.thenReturn(page);
+		when(repository.findSlice(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+		.thenReturn(new SliceImpl<Book>(lista, pageRequest, false));
+		when(repository.count(Mockito.any(Example.class))).thenReturn(1L);
 		
 		Page<Book> result= service.find(book, pageRequest);
 		
@@ -180,6 +184,43 @@ public class BookServiceTest {
 		assertThat(result.getPageable().getPageSize()).isEqualTo(10);
 	}
 	
+	@Test
+	@DisplayName("deve filtrar os livros sem contar o total")
+	public void findBookSliceTest() {
+		Book book = createValidBook();
+		PageRequest pageRequest  = PageRequest.of(0, 1);
+		
+		when(repository.findSlice(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+		.thenReturn(new SliceImpl<Book>(java.util.Arrays.asList(book), pageRequest, true));
+		
+		Slice<Book> result = service.findSlice(book, pageRequest);
+		
+		assertThat(result.hasNext()).isTrue();
+		assertThat(result.getContent()).containsExactly(book);
+		verify(repository, Mockito.never()).count(Mockito.any(Example.class));
+	}
+	
+	@Test
+	@DisplayName("deve listar sem filtro ou com ordenação pela base mesmo com o índice de busca pronto")
+	public void findWithoutFilterOrSortedFromDatabaseTest() {
+		BookSearchIndex searchIndex = new BookSearchIndex(repository);
+		when(repository.findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.any(Pageable.class)))
+		.thenReturn(new SliceImpl<Book>(java.util.Arrays.asList(Book.builder().id(1L).title("Livro").build()), PageRequest.of(0, 1), false));
+		searchIndex.rebuild();
+		service = new BookServiceImpl(repository, new CountCache(), searchIndex);
+		when(repository.findSlice(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+		.thenReturn(new SliceImpl<Book>(java.util.Arrays.asList(), PageRequest.of(0, 10), false));
+		
+		service.findSlice(new Book(), PageRequest.of(0, 10));
+		service.findSlice(Book.builder().title("livro").build(), PageRequest.of(0, 10, Sort.by("title")));
+		service.findAfter(new Book(), null, 10);
+		Slice<Book> indexed = service.findSlice(Book.builder().title("livro").build(), PageRequest.of(0, 10));
+		
+		verify(repository, times(2)).findSlice(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+		verify(repository).findAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.isNull(), Mockito.eq(PageRequest.of(0, 10)));
+		assertThat(indexed.getContent()).extracting(Book::getId).containsExactly(1L);
+	}
+	
 	@Test
 	@DisplayName("deve obter um livro pelo isbn")
 	public void getBookIsbnTest() {
@@ -194,4 +235,44 @@ public class BookServiceTest {
 		
 		verify(repository, times(1)).findByIsbn(isbn);
 	}
+	
+	@Test
+	@DisplayName("não deve encontrar pelo isbn um livro deletado")
+	public void getBookIsbnAfterDeleteTest() {
+		String isbn = "1230";
+		Book book = Book.builder().id((long) 11).isbn(isbn).build();
+		when(repository.findByIsbn(isbn)).thenReturn(Optional.of(book));
+		
+		service.getBookByIsbn(isbn);
+		service.delete(book);
+		when(repository.findByIsbn(isbn)).thenReturn(Optional.empty());
+		
+		assertThat(service.getBookByIsbn(isbn).isPresent()).isFalse();
+		verify(repository, times(2)).findByIsbn(isbn);
+	}
+	
+	@Test
+	@DisplayName("deve alterar o livro com um único update e devolver o isbn gravado")
+	public void updateDetailsTest() {
+		String isbn = "1230";
+		Book book = Book.builder().id((long) 11).isbn(isbn).title("Antigo").build();
+		when(repository.findByIsbn(isbn)).thenReturn(Optional.of(book));
+		when(repository.updateDetails(Mockito.eq(11L), Mockito.eq("Novo"), Mockito.eq("Autor"), Mockito.eq(3L), Mockito.any(Instant.class))).thenReturn(Optional.of(isbn));
+		
+		service.getBookByIsbn(isbn);
+		Optional<Book> updated = service.updateDetails(11L, "Novo", "Autor", 3L);
+		service.getBookByIsbn(isbn);
+		
+		assertThat(updated.get().getIsbn()).isEqualTo(isbn);
+		verify(repository, times(2)).findByIsbn(isbn);
+		verify(repository, Mockito.never()).findById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("deve informar quando nenhum livro foi alterado")
+	public void updateDetailsNotFoundTest() {
+		when(repository.updateDetails(Mockito.anyLong(), Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(Instant.class))).thenReturn(Optional.empty());
+		
+		assertThat(service.updateDetails(11L, "Novo", "Autor", null)).isEmpty();
+	}
 }
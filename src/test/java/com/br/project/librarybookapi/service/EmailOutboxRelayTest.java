@@ -0,0 +1,145 @@
+package com.br.project.librarybookapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.project.librarybookapi.model.EmailOutbox;
+import com.br.project.librarybookapi.model.EmailStatus;
+import com.br.project.librarybookapi.repository.EmailOutboxRepository;
+import com.br.project.librarybookapi.service.impl.EmailServiceImpl;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class EmailOutboxRelayTest {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+	
+	@Autowired
+	EmailOutboxRepository repository;
+	
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	
+	@Test
+	@DisplayName("Deve enviar as mensagens pendentes da outbox e marcá-las como enviadas")
+	public void relayPendingEmailsTest() throws Exception {
+		Map<String, String> messages = new LinkedHashMap<>();
+		messages.put("fulano@email.com", "Devolva o livro");
+		messages.put("ciclano@email.com", "Devolva o livro");
+		messages.put("beltrano@email.com", "Devolva o livro");
+		EmailService emailService = new EmailServiceImpl(repository);
+		emailService.sendEmailsToEach("Emprestimo de livro não devolvido", messages);
+		
+		int processed = createRelay(ServerSetupTest.SMTP.getPort(), 5).relayBatch();
+		
+		assertThat(processed).isEqualTo(3);
+		MimeMessage[] received = greenMail.getReceivedMessages();
+		assertThat(received).hasSize(3);
+		assertThat(received[0].getSubject()).isEqualTo("Emprestimo de livro não devolvido");
+		assertThat(repository.countByStatus(EmailStatus.SENT)).isEqualTo(3);
+		assertThat(repository.countByStatus(EmailStatus.PENDING)).isZero();
+		assertThat(registry.counter("library.emails.sent").count()).isEqualTo(3);
+	}
+	
+	@Test
+	@DisplayName("Deve reagendar com backoff e descartar após o máximo de tentativas quando o SMTP falhar")
+	public void retryAndDeadLetterTest() {
+		EmailOutbox email = repository.save(EmailOutbox.builder()
+				.recipients("fulano@email.com")
+				.subject("assunto")
+				.text("texto")
+				.status(EmailStatus.PENDING)
+				.nextAttemptAt(LocalDateTime.now())
+				.build());
+		EmailOutboxRelay relay = createRelay(ServerSetupTest.SMTP.getPort() + 1, 2);
+		
+		relay.relayBatch();
+		
+		EmailOutbox retried = repository.findById(email.getId()).get();
+		assertThat(retried.getStatus()).isEqualTo(EmailStatus.PENDING);
+		assertThat(retried.getAttempts()).isEqualTo(1);
+		assertThat(retried.getNextAttemptAt()).isAfter(LocalDateTime.now());
+		assertThat(retried.getLastError()).isNotNull();
+		
+		retried.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+		repository.save(retried);
+		relay.relayBatch();
+		
+		assertThat(repository.findById(email.getId()).get().getStatus()).isEqualTo(EmailStatus.DEAD);
+		assertThat(registry.counter("library.emails.failed").count()).isEqualTo(2);
+		assertThat(registry.counter("library.emails.sent").count()).isZero();
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	@DisplayName("Deve enviar uma mensagem por destinatário em lotes paralelos")
+	public void relayEachRecipientInParallelTest() throws Exception {
+		Map<String, String> messages = new LinkedHashMap<>();
+		for(int i = 0; i < 35; i++) {
+			messages.put("cliente" + i + "@email.com", "Devolva o livro " + i);
+		}
+		new EmailServiceImpl(repository).sendEmailsToEach("assunto", messages);
+		EmailOutboxRelay relay = createRelay(ServerSetupTest.SMTP.getPort(), 5, 3);
+		
+		try {
+			relay.relay();
+			
+			MimeMessage[] received = greenMail.getReceivedMessages();
+			assertThat(received).hasSize(35);
+			for(MimeMessage message : received) {
+				assertThat(message.getAllRecipients()).hasSize(1);
+			}
+			assertThat(repository.countByStatus(EmailStatus.SENT)).isEqualTo(35);
+			assertThat(registry.counter("library.emails.sent").count()).isEqualTo(35);
+		} finally {
+			repository.deleteAll();
+		}
+	}
+	
+	@Test
+	@DisplayName("Deve dobrar o intervalo entre tentativas até o limite")
+	public void backoffTest() {
+		EmailOutboxRelay relay = createRelay(ServerSetupTest.SMTP.getPort(), 5);
+		
+		assertThat(relay.backoff(1)).isEqualTo(Duration.ofSeconds(30));
+		assertThat(relay.backoff(3)).isEqualTo(Duration.ofMinutes(2));
+		assertThat(relay.backoff(20)).isEqualTo(Duration.ofHours(1));
+	}
+	
+	private EmailOutboxRelay createRelay(int port, int maxAttempts) {
+		return createRelay(port, maxAttempts, 1);
+	}
+	
+	private EmailOutboxRelay createRelay(int port, int maxAttempts, int parallelism) {
+		JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+		mailSender.setHost("localhost");
+		mailSender.setPort(port);
+		mailSender.setDefaultEncoding("UTF-8");
+		return new EmailOutboxRelay(repository, mailSender, registry, new SimpleAsyncTaskExecutor("email-relay-"), 10, maxAttempts,
+				Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofMinutes(5), parallelism);
+	}
+}
@@ -0,0 +1,229 @@
+package com.br.project.librarybookapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.EmailOutbox;
+import com.br.project.librarybookapi.model.JobPartition;
+import com.br.project.librarybookapi.model.JobPartitionStatus;
+import com.br.project.librarybookapi.model.JobRun;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.repository.EmailOutboxRepository;
+import com.br.project.librarybookapi.repository.JobPartitionRepository;
+import com.br.project.librarybookapi.repository.JobRunRepository;
+import com.br.project.librarybookapi.repository.LoanRepository;
+import com.br.project.librarybookapi.service.impl.EmailServiceImpl;
+import com.br.project.librarybookapi.service.impl.LoanServiceImpl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Duas instâncias da aplicação, cada uma com o seu contexto, sobre o mesmo
+ * banco H2 em arquivo, como duas réplicas disparando o job à meia-noite.
+ */
+public class LateLoanJobClusterTest {
+	
+	@TempDir
+	static Path databaseDir;
+	
+	static ConfigurableApplicationContext nodeA;
+	static ConfigurableApplicationContext nodeB;
+	
+	@BeforeAll
+	public static void startNodes() {
+		String url = "jdbc:h2:file:" + databaseDir.resolve("library").toAbsolutePath();
+		nodeA = startNode(url, "node-a");
+		nodeB = startNode(url, "node-b");
+	}
+	
+	@AfterAll
+	public static void stopNodes() {
+		nodeB.close();
+		nodeA.close();
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		nodeA.getBean(EmailOutboxRepository.class).deleteAll();
+		nodeA.getBean(JobPartitionRepository.class).deleteAll();
+		nodeA.getBean(JobRunRepository.class).deleteAll();
+		nodeA.getBean(LoanRepository.class).deleteAll();
+		nodeA.getBean(BookRepository.class).deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Réplicas devem dividir as partições e enviar um único email por cliente")
+	public void splitPartitionsBetweenNodesTest() {
+		for(int customer = 0; customer < 20; customer++) {
+			createLateLoans(customer, 1 + customer % 3);
+		}
+		
+		CompletableFuture<Void> a = CompletableFuture.runAsync(() -> nodeA.getBean(ScheduleService.class).sendMailToLateLoan());
+		CompletableFuture<Void> b = CompletableFuture.runAsync(() -> nodeB.getBean(ScheduleService.class).sendMailToLateLoan());
+		CompletableFuture.allOf(a, b).join();
+		
+		List<EmailOutbox> emails = nodeA.getBean(EmailOutboxRepository.class).findAll();
+		assertThat(emails).hasSize(20);
+		assertThat(emails.stream().map(EmailOutbox::getRecipients).distinct().count()).isEqualTo(20);
+		EmailOutbox threeBooks = emails.stream()
+				.filter(email -> email.getRecipients().equals("cliente02@email.com")).findFirst().get();
+		assertThat(threeBooks.getText()).contains("Livro 02-0", "Livro 02-1", "Livro 02-2");
+		
+		assertThat(nodeA.getBean(JobRunRepository.class).count()).isEqualTo(1);
+		List<JobPartition> partitions = nodeA.getBean(JobPartitionRepository.class)
+				.findByJobNameAndRunDateOrderById(ScheduleService.LATE_LOANS_JOB, LocalDate.now());
+		assertThat(partitions).hasSizeGreaterThan(1);
+		assertThat(partitions).extracting(JobPartition::getStatus).containsOnly(JobPartitionStatus.DONE);
+		assertThat(partitions).extracting(JobPartition::getAttempts).containsOnly(1);
+	}
+	
+	@Test
+	@DisplayName("Partição de uma réplica que caiu deve ser assumida por outra depois do prazo")
+	public void takeOverExpiredPartitionTest() {
+		for(int customer = 0; customer < 4; customer++) {
+			createLateLoans(customer, 2);
+		}
+		nodeA.getBean(JobRunRepository.class).save(JobRun.builder()
+				.jobName(ScheduleService.LATE_LOANS_JOB)
+				.runDate(LocalDate.now())
+				.plannedBy("node-c")
+				.plannedAt(LocalDateTime.now().minusMinutes(10))
+				.build());
+		JobPartitionRepository partitionRepository = nodeA.getBean(JobPartitionRepository.class);
+		partitionRepository.saveAll(Arrays.asList(
+				JobPartition.builder().jobName(ScheduleService.LATE_LOANS_JOB).runDate(LocalDate.now())
+					.fromKey("").toKey("cliente02@email.com").status(JobPartitionStatus.RUNNING)
+					.owner("node-c").leaseUntil(LocalDateTime.now().minusMinutes(1)).attempts(1).build(),
+				JobPartition.builder().jobName(ScheduleService.LATE_LOANS_JOB).runDate(LocalDate.now())
+					.fromKey("cliente02@email.com").status(JobPartitionStatus.DONE)
+					.owner("node-c").attempts(1).completedAt(LocalDateTime.now().minusMinutes(5)).build()));
+		
+		nodeB.getBean(ScheduleService.class).sendMailToLateLoan();
+		
+		List<String> recipients = nodeA.getBean(EmailOutboxRepository.class).findAll().stream()
+				.map(EmailOutbox::getRecipients).sorted().collect(Collectors.toList());
+		assertThat(recipients).containsExactly("cliente00@email.com", "cliente01@email.com");
+		JobPartition takenOver = partitionRepository
+				.findByJobNameAndRunDateOrderById(ScheduleService.LATE_LOANS_JOB, LocalDate.now()).get(0);
+		assertThat(takenOver.getStatus()).isEqualTo(JobPartitionStatus.DONE);
+		assertThat(takenOver.getOwner()).isEqualTo("node-b");
+		assertThat(takenOver.getAttempts()).isEqualTo(2);
+		assertThat(takenOver.getCheckpointKey()).isEqualTo("cliente01@email.com");
+	}
+	
+	@Test
+	@DisplayName("Réplica que assume a partição deve continuar do último bloco gravado")
+	public void resumeFromCheckpointTest() {
+		for(int customer = 0; customer < 3; customer++) {
+			createLateLoans(customer, 2);
+		}
+		nodeA.getBean(JobRunRepository.class).save(JobRun.builder()
+				.jobName(ScheduleService.LATE_LOANS_JOB)
+				.runDate(LocalDate.now())
+				.plannedBy("node-c")
+				.plannedAt(LocalDateTime.now().minusMinutes(10))
+				.build());
+		nodeA.getBean(JobPartitionRepository.class).save(JobPartition.builder()
+				.jobName(ScheduleService.LATE_LOANS_JOB).runDate(LocalDate.now())
+				.fromKey("").status(JobPartitionStatus.RUNNING).checkpointKey("cliente00@email.com")
+				.owner("node-c").leaseUntil(LocalDateTime.now().minusMinutes(1)).attempts(1).build());
+		
+		nodeB.getBean(ScheduleService.class).sendMailToLateLoan();
+		
+		List<String> recipients = nodeA.getBean(EmailOutboxRepository.class).findAll().stream()
+				.map(EmailOutbox::getRecipients).sorted().collect(Collectors.toList());
+		assertThat(recipients).containsExactly("cliente01@email.com", "cliente02@email.com");
+	}
+	
+	@Test
+	@DisplayName("Não deve gravar o bloco de uma partição assumida por outra réplica")
+	public void lostLeaseRollsBackChunkTest() {
+		JobPartitionRepository partitionRepository = nodeA.getBean(JobPartitionRepository.class);
+		EmailService emailService = nodeA.getBean(EmailService.class);
+		
+		int completed = nodeA.getBean(JobPartitionCoordinator.class).execute("lost-lease", LocalDate.now(),
+				() -> Arrays.asList(""),
+				progress -> {
+					JobPartition partition = progress.getPartition();
+					// outra réplica assumiu e concluiu a partição antes deste bloco
+					partition.setOwner("node-c");
+					partition.setStatus(JobPartitionStatus.DONE);
+					partitionRepository.save(partition);
+					progress.commit("cliente00@email.com", () -> emailService.sendEmailsToEach("Assunto",
+							Collections.singletonMap("cliente00@email.com", "Mensagem")));
+				});
+		
+		assertThat(completed).isZero();
+		assertThat(nodeA.getBean(EmailOutboxRepository.class).count()).isZero();
+		JobPartition partition = partitionRepository.findByJobNameAndRunDateOrderById("lost-lease", LocalDate.now()).get(0);
+		assertThat(partition.getOwner()).isEqualTo("node-c");
+		assertThat(partition.getCheckpointKey()).isNull();
+	}
+	
+	private void createLateLoans(int customer, int books) {
+		BookRepository bookRepository = nodeA.getBean(BookRepository.class);
+		LoanRepository loanRepository = nodeA.getBean(LoanRepository.class);
+		String id = String.format("%02d", customer);
+		for(int i = 0; i < books; i++) {
+			Book book = bookRepository.save(Book.builder()
+					.isbn(id + "-" + i).title("Livro " + id + "-" + i).author("Autor").build());
+			loanRepository.save(Loan.builder()
+					.book(book)
+					.customer("Cliente " + id)
+					.customerEmail("cliente" + id + "@email.com")
+					.loanDate(LocalDate.now().minusDays(10))
+					.build());
+		}
+	}
+	
+	private static ConfigurableApplicationContext startNode(String url, String nodeId) {
+		return new SpringApplicationBuilder(JobNodeConfig.class)
+				.web(WebApplicationType.NONE)
+				.run("--spring.datasource.url=" + url,
+						"--library.jobs.node-id=" + nodeId,
+						"--library.jobs.poll-interval=50ms",
+						"--library.schedule.late-loans.partition-size=4",
+						"--library.schedule.late-loans.chunk-size=3");
+	}
+	
+	@SpringBootConfiguration
+	@EnableAutoConfiguration
+	@EntityScan(basePackageClasses = Loan.class)
+	@EnableJpaRepositories(basePackageClasses = LoanRepository.class)
+	@Import({ LoanServiceImpl.class, BookAvailabilityIndex.class, CountCache.class, EmailServiceImpl.class,
+		JobPartitionCoordinator.class, ScheduleService.class })
+	static class JobNodeConfig {
+		
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.br.project.librarybookapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.br.project.librarybookapi.dto.LoanExportFilterDTO;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.service.impl.LoanExportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class LoanExportServiceTest {
+
+	@Autowired
+	TestEntityManager entityManager;
+	
+	@Autowired
+	DataSource dataSource;
+	
+	@Autowired
+	PlatformTransactionManager transactionManager;
+	
+	LoanExportService service;
+	
+	@BeforeEach
+	public void setUp() {
+		this.service = new LoanExportServiceImpl(dataSource, transactionManager, new ObjectMapper(), 2);
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em CSV escapando vírgulas e aspas")
+	public void exportCsvTest() throws Exception {
+		Book book = entityManager.persist(Book.builder().isbn("111").title("Dom \"Casmurro\"").author("Machado, de Assis").build());
+		Loan first = persistLoan(book, "Fulano", LocalDate.of(2022, 1, 10), false);
+		entityManager.flush();
+		
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		long exported = service.export(new LoanExportFilterDTO(), LoanExportService.Format.CSV, output);
+		
+		assertThat(exported).isEqualTo(1);
+		assertThat(output.toString(StandardCharsets.UTF_8.name())).isEqualTo(
+				"id,customer,email,loanDate,returned,bookId,isbn,title,author\r\n"
+				+ first.getId() + ",Fulano,,2022-01-10,false," + book.getId() + ",111,\"Dom \"\"Casmurro\"\"\",\"Machado, de Assis\"\r\n");
+	}
+	
+	@Test
+	@DisplayName("Deve exportar em NDJSON somente os empréstimos do filtro")
+	public void exportNdjsonWithFilterTest() throws Exception {
+		Book book = entityManager.persist(Book.builder().isbn("222").title("Livro").author("Autor").build());
+		Book other = entityManager.persist(Book.builder().isbn("333").title("Outro").author("Autor").build());
+		persistLoan(book, "Fulano", LocalDate.of(2022, 1, 10), true);
+		Loan expected = persistLoan(book, "Fulano", LocalDate.of(2022, 2, 10), true);
+		persistLoan(book, "Ciclano", LocalDate.of(2022, 2, 11), false);
+		persistLoan(other, "Fulano", LocalDate.of(2022, 2, 12), false);
+		entityManager.flush();
+		
+		LoanExportFilterDTO filter = LoanExportFilterDTO.builder().isbn("222").customer("Fulano")
+				.from(LocalDate.of(2022, 2, 1)).to(LocalDate.of(2022, 2, 28)).build();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		long exported = service.export(filter, LoanExportService.Format.NDJSON, output);
+		
+		assertThat(exported).isEqualTo(1);
+		assertThat(output.toString(StandardCharsets.UTF_8.name())).isEqualTo(
+				"{\"id\":" + expected.getId() + ",\"customer\":\"Fulano\",\"email\":null,\"loanDate\":\"2022-02-10\",\"returned\":true,"
+				+ "\"bookId\":" + book.getId() + ",\"isbn\":\"222\",\"title\":\"Livro\",\"author\":\"Autor\"}\n");
+	}
+	
+	@Test
+	@DisplayName("Deve ler as linhas numa transação somente leitura, sem autocommit")
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void exportInReadOnlyTransactionTest() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.executeWithoutResult(status -> {
+			Book book = entityManager.persist(Book.builder().isbn("444").title("Livro").author("Autor").build());
+			persistLoan(book, "Fulano", LocalDate.of(2022, 1, 10), false);
+		});
+		List<Boolean> states = new ArrayList<>();
+		OutputStream output = new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+			
+			@Override
+			public void flush() throws IOException {
+				// a primeira linha é enviada de dentro do RowCallbackHandler
+				if(states.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive()) {
+					try {
+						states.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+						states.add(DataSourceUtils.getConnection(dataSource).getAutoCommit());
+					} catch (SQLException e) {
+						throw new IOException(e);
+					}
+				}
+			}
+		};
+		
+		try {
+			assertThat(service.export(new LoanExportFilterDTO(), LoanExportService.Format.CSV, output)).isEqualTo(1);
+			assertThat(states).containsExactly(true, false);
+		} finally {
+			transactionTemplate.executeWithoutResult(status -> {
+				entityManager.getEntityManager().createQuery("delete from Loan").executeUpdate();
+				entityManager.getEntityManager().createQuery("delete from Book").executeUpdate();
+			});
+		}
+	}
+	
+	private Loan persistLoan(Book book, String customer, LocalDate loanDate, boolean returned) {
+		return entityManager.persist(Loan.builder().book(book).customer(customer).loanDate(loanDate).returned(returned).build());
+	}
+}
@@ -0,0 +1,141 @@
+package com.br.project.librarybookapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.project.librarybookapi.exception.BusinessException;
+import com.br.project.librarybookapi.model.Book;
+import com.br.project.librarybookapi.model.Loan;
+import com.br.project.librarybookapi.repository.BookRepository;
+import com.br.project.librarybookapi.repository.LoanRepository;
+import com.br.project.librarybookapi.service.impl.LoanServiceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Vários threads disputando os mesmos livros em duas "instâncias" (serviços
+ * com índices de disponibilidade próprios) sobre a mesma base. Sem transação
+ * de teste, para que cada empréstimo seja confirmado como em produção.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class LoanReservationStressTest {
+
+	static final int BOOKS = 20;
+	
+	static final int THREADS = 8;
+	
+	static final int ATTEMPTS_PER_BOOK = 4;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve criar um único empréstimo em aberto por livro com checkouts concorrentes em duas instâncias")
+	public void concurrentCheckoutsTest() throws Exception {
+		List<Book> books = createBooks();
+		List<LoanService> nodes = new ArrayList<>();
+		nodes.add(newNode());
+		nodes.add(newNode());
+		
+		List<Callable<Boolean>> attempts = new ArrayList<>();
+		for(Book book : books) {
+			for(int i = 0; i < ATTEMPTS_PER_BOOK * THREADS; i++) {
+				LoanService node = nodes.get(i % nodes.size());
+				attempts.add(() -> checkout(node, book));
+			}
+		}
+		Collections.shuffle(attempts);
+		
+		AtomicInteger succeeded = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for(Future<Boolean> result : executor.invokeAll(attempts)) {
+				if(result.get()) {
+					succeeded.incrementAndGet();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertThat(succeeded.get()).isEqualTo(BOOKS);
+		assertThat(loanRepository.findBookIdsNotReturned()).hasSize(BOOKS).doesNotHaveDuplicates();
+		assertThat(loanRepository.count()).isEqualTo(BOOKS);
+	}
+	
+	@Test
+	@DisplayName("Deve emprestar em uma instância o livro devolvido em outra")
+	public void returnOnAnotherNodeTest() {
+		Book book = createBooks().get(0);
+		LoanService first = newNode();
+		LoanService second = newNode();
+		
+		Loan loan = first.save(newLoan(book));
+		assertThat(checkout(second, book)).isFalse();
+		
+		loan.setReturned(true);
+		second.update(loan);
+		
+		assertThat(checkout(first, book)).isTrue();
+		assertThat(loanRepository.findBookIdsNotReturned()).containsExactly(book.getId());
+	}
+	
+	private boolean checkout(LoanService node, Book book) {
+		try {
+			node.save(newLoan(book));
+			return true;
+		} catch (BusinessException e) {
+			return false;
+		}
+	}
+	
+	private LoanService newNode() {
+		BookAvailabilityIndex availabilityIndex = new BookAvailabilityIndex(loanRepository);
+		availabilityIndex.rebuild();
+		return new LoanServiceImpl(loanRepository, availabilityIndex, new CountCache(), new SimpleMeterRegistry());
+	}
+	
+	private List<Book> createBooks() {
+		List<Book> books = new ArrayList<>();
+		for(int i = 0; i < BOOKS; i++) {
+			books.add(Book.builder().title("Livro " + i).author("Autor").isbn("isbn" + i).build());
+		}
+		return bookRepository.saveAll(books);
+	}
+	
+	private Loan newLoan(Book book) {
+		return Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+	}
+}
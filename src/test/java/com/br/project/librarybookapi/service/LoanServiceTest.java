@@ -9,7 +9,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,23 +21,32 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import com.br.project.librarybookapi.dto.BulkReturnItemDTO;
+import com.br.project.librarybookapi.dto.BulkReturnResultDTO;
+import com.br.project.librarybookapi.dto.CustomerLateLoanCountDTO;
+import com.br.project.librarybookapi.dto.LateLoanDTO;
 import com.br.project.librarybookapi.dto.LoanFilterDTO;
+import com.br.project.librarybookapi.dto.LoanStateDTO;
 import com.br.project.librarybookapi.exception.BusinessException;
 import com.br.project.librarybookapi.model.Book;
 import com.br.project.librarybookapi.model.Loan;
 import com.br.project.librarybookapi.repository.LoanRepository;
 import com.br.project.librarybookapi.service.impl.LoanServiceImpl;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -45,10 +56,16 @@ public class LoanServiceTest {
 	LoanRepository repository;
 	
 	LoanService service;
+	
+	BookAvailabilityIndex availabilityIndex;
+	
+	SimpleMeterRegistry registry;
 
 	@BeforeEach
 	public void setUp() {
-		this.service = new LoanServiceImpl(repository);
+		this.availabilityIndex = new BookAvailabilityIndex(repository);
+		this.registry = new SimpleMeterRegistry();
+		this.service = new LoanServiceImpl(repository, availabilityIndex, new CountCache(), registry);
 	}
 	
 	@Test
@@ -69,7 +86,6 @@ public class LoanServiceTest {
 				.customer(customer)
 				.loanDate(LocalDate.now())
 				.build();
-		when(repository.existsByBookAndNotReturned(book)).thenReturn(false);
 		when(repository.save(loanSaving)).thenReturn(savedLoan);
 		
 		Loan loan = service.save(loanSaving);
@@ -78,6 +94,7 @@ public class LoanServiceTest {
 		assertThat(loan.getBook().getId()).isEqualTo(savedLoan.getBook().getId());
 		assertThat(loan.getCustomer()).isEqualTo(savedLoan.getCustomer());
 		assertThat(loan.getLoanDate()).isEqualTo(savedLoan.getLoanDate());
+		assertThat(registry.counter("library.loans.created").count()).isEqualTo(1);
 	}
 	
 	@Test
@@ -92,15 +109,63 @@ public class LoanServiceTest {
 				.loanDate(LocalDate.now())
 				.build();
 		
+		availabilityIndex.reserve(book.getId());
 		when(repository.existsByBookAndNotReturned(book)).thenReturn(true);
 		
 		Throwable exception = catchThrowable(() -> service.save(loanSaving));
 		
 		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+		assertThat(registry.counter("library.loans.rejected").count()).isEqualTo(1);
 		
 		verify(repository, never()).save(loanSaving);
 	}
 	
+	@Test
+	@DisplayName("Deve emprestar livro devolvido em outra instância mesmo com o índice desatualizado")
+	public void staleIndexSaveTest() {
+		Book book = Book.builder().id((long) 11).build();
+		Loan loanSaving = Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+		Loan savedLoan = Loan.builder().id((long) 1).book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+		
+		availabilityIndex.reserve(book.getId());
+		when(repository.existsByBookAndNotReturned(book)).thenReturn(false);
+		when(repository.save(loanSaving)).thenReturn(savedLoan);
+		
+		Loan loan = service.save(loanSaving);
+		
+		assertThat(loan.getId()).isEqualTo(1L);
+		assertThat(availabilityIndex.isLoaned(book.getId())).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve recusar o empréstimo quando a base já tiver empréstimo em aberto do livro")
+	public void bookLoanedOnAnotherNodeTest() {
+		Book book = Book.builder().id((long) 11).build();
+		Loan loanSaving = Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+		
+		when(repository.save(loanSaving)).thenThrow(new DataIntegrityViolationException("ux_loan_open_book"));
+		
+		Throwable exception = catchThrowable(() -> service.save(loanSaving));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+		assertThat(availabilityIndex.isLoaned(book.getId())).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve liberar o livro e repassar o erro quando a violação não for de empréstimo em aberto")
+	public void otherIntegrityViolationSaveTest() {
+		Book book = Book.builder().id((long) 11).build();
+		Loan loanSaving = Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("fk_loan_book");
+		
+		when(repository.save(loanSaving)).thenThrow(violation);
+		
+		Throwable exception = catchThrowable(() -> service.save(loanSaving));
+		
+		assertThat(exception).isSameAs(violation);
+		assertThat(availabilityIndex.isLoaned(book.getId())).isFalse();
+	}
+	
 	@Test
 	@DisplayName("deve obter informações do empréstimo pelo id")
 	public void getLoanDetailsTest() throws Exception{
@@ -153,13 +218,12 @@ public class LoanServiceTest {
 		
 		List<Loan> lista = Arrays.asList(loan);
 		
-		Page<Loan> page = new PageImpl<Loan>(lista, pageRequest, lista.size());
-		
-		when(repository.findBookIsbnOrCustomer(
+		when(repository.findSliceBookIsbnOrCustomer(
 				Mockito.anyString(), 
 				Mockito.anyString(), 
 				Mockito.any(PageRequest.class)))
-		.thenReturn(page);
+		.thenReturn(new SliceImpl<Loan>(lista, pageRequest, false));
+		when(repository.countBookIsbnOrCustomer(Mockito.anyString(), Mockito.anyString())).thenReturn((long) lista.size());
 		
 		Page<Loan> result = service.find(filterDTO, pageRequest) ;
 		
@@ -168,4 +232,192 @@ public class LoanServiceTest {
 		assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
 		assertThat(result.getPageable().getPageSize()).isEqualTo(100);
 	}
+	
+	@Test
+	@DisplayName("Deve reaproveitar o total em cache ao filtrar emprestimos novamente")
+	public void findByLoanCachedCountTest() {
+		LoanFilterDTO filterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("123").build();
+		PageRequest pageRequest = PageRequest.of(0, 1);
+		
+		when(repository.findSliceBookIsbnOrCustomer(
+				Mockito.anyString(), 
+				Mockito.anyString(), 
+				Mockito.any(PageRequest.class)))
+		.thenReturn(new SliceImpl<Loan>(Arrays.asList(createLoan()), pageRequest, true));
+		when(repository.countBookIsbnOrCustomer("123", "Fulano")).thenReturn(50L);
+		
+		service.find(filterDTO, pageRequest);
+		Page<Loan> result = service.find(filterDTO, pageRequest);
+		
+		assertThat(result.getTotalElements()).isEqualTo(50);
+		verify(repository, Mockito.times(1)).countBookIsbnOrCustomer("123", "Fulano");
+	}
+	
+	@Test
+	@DisplayName("deve reconstruir o índice de livros emprestados a partir da base")
+	public void rebuildAvailabilityIndexTest() {
+		when(repository.findOpenLoanBookIds()).thenReturn(Arrays.asList(new Object[] {1L, 11L}, new Object[] {2L, 12L}));
+		
+		availabilityIndex.rebuild();
+		
+		assertThat(availabilityIndex.isLoaned(11L)).isTrue();
+		assertThat(availabilityIndex.isLoaned(12L)).isTrue();
+		assertThat(availabilityIndex.isLoaned(13L)).isFalse();
+		
+		availabilityIndex.releaseLoan(2L);
+		assertThat(availabilityIndex.isLoaned(12L)).isFalse();
+	}
+	
+	@Test
+	@DisplayName("deve emprestar de novo o livro devolvido sem consultar a base")
+	public void loanReturnLoanTest() {
+		Book book = Book.builder().id((long) 11).build();
+		Loan first = Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+		Loan second = Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build();
+		when(repository.save(first)).thenReturn(Loan.builder().id(1L).book(book).build());
+		when(repository.save(second)).thenReturn(Loan.builder().id(2L).book(book).build());
+		when(repository.markReturned(1L)).thenReturn(1);
+		
+		service.save(first);
+		assertThat(service.updateReturned(1L, true)).isTrue();
+		Loan loan = service.save(second);
+		
+		assertThat(loan.getId()).isEqualTo(2L);
+		assertThat(availabilityIndex.isLoaned(book.getId())).isTrue();
+		verify(repository, never()).existsByBookAndNotReturned(Mockito.any(Book.class));
+	}
+	
+	@Test
+	@DisplayName("deve liberar o livro para novo empréstimo após a devolução")
+	public void releaseBookOnReturnTest() {
+		Loan loan = createLoan();
+		availabilityIndex.reserve(loan.getBook().getId());
+		loan.setReturned(true);
+		when(repository.save(loan)).thenReturn(loan);
+		
+		service.update(loan);
+		
+		assertThat(availabilityIndex.isLoaned(loan.getBook().getId())).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve agrupar os empréstimos atrasados por cliente mesmo entre blocos")
+	public void processLateLoansByCustomerTest() {
+		LateLoanDTO first = LateLoanDTO.builder().loanId(3L).customerEmail("a@email.com").build();
+		LateLoanDTO second = LateLoanDTO.builder().loanId(1L).customerEmail("b@email.com").build();
+		LateLoanDTO third = LateLoanDTO.builder().loanId(5L).customerEmail("b@email.com").build();
+		LateLoanDTO fourth = LateLoanDTO.builder().loanId(2L).customerEmail("c@email.com").build();
+		
+		when(repository.findLateLoansByCustomerAfter(Mockito.any(LocalDate.class), Mockito.eq(""), Mockito.eq(0L), Mockito.isNull(), Mockito.any(PageRequest.class)))
+		.thenReturn(Arrays.asList(first, second));
+		when(repository.findLateLoansByCustomerAfter(Mockito.any(LocalDate.class), Mockito.eq("b@email.com"), Mockito.eq(1L), Mockito.isNull(), Mockito.any(PageRequest.class)))
+		.thenReturn(Arrays.asList(third, fourth));
+		when(repository.findLateLoansByCustomerAfter(Mockito.any(LocalDate.class), Mockito.eq("c@email.com"), Mockito.eq(2L), Mockito.isNull(), Mockito.any(PageRequest.class)))
+		.thenReturn(new ArrayList<>());
+		
+		List<List<LateLoanDTO>> groups = new ArrayList<>();
+		service.processLateLoansByCustomer(2, "", 0L, null, groups::addAll);
+		
+		assertThat(groups).containsExactly(Arrays.asList(first), Arrays.asList(second, third), Arrays.asList(fourth));
+		assertThat(registry.counter("library.loans.late").count()).isEqualTo(4);
+	}
+	
+	@Test
+	@DisplayName("Deve dividir os clientes atrasados em faixas sem separar um cliente")
+	public void lateLoanCustomerBoundariesTest() {
+		when(repository.findLateLoanCountsByCustomerAfter(Mockito.any(LocalDate.class), Mockito.eq(""), Mockito.any(PageRequest.class)))
+		.thenReturn(Arrays.asList(
+				new CustomerLateLoanCountDTO("a@email.com", 2L),
+				new CustomerLateLoanCountDTO("b@email.com", 3L),
+				new CustomerLateLoanCountDTO("c@email.com", 1L),
+				new CustomerLateLoanCountDTO("d@email.com", 1L)));
+		
+		assertThat(service.getLateLoanCustomerBoundaries(3)).containsExactly("", "c@email.com");
+	}
+	
+	@Test
+	@DisplayName("deve devolver o empréstimo sem carregá-lo")
+	public void updateReturnedTest() {
+		when(repository.markReturned(1L)).thenReturn(1);
+		when(repository.markReturned(2L)).thenReturn(0);
+		
+		assertThat(service.updateReturned(1L, true)).isTrue();
+		assertThat(service.updateReturned(2L, true)).isFalse();
+		verify(repository, never()).findById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("deve recusar reabrir o empréstimo de um livro emprestado")
+	public void reopenLoanedBookTest() {
+		when(repository.markNotReturned(1L)).thenThrow(new DataIntegrityViolationException("ux_loan_open_book"));
+		
+		Throwable exception = catchThrowable(() -> service.updateReturned(1L, false));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+	}
+	
+	@Test
+	@DisplayName("deve repassar outras violações ao reabrir o empréstimo")
+	public void reopenOtherIntegrityViolationTest() {
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("fk_loan_book");
+		when(repository.markNotReturned(1L)).thenThrow(violation);
+		
+		Throwable exception = catchThrowable(() -> service.updateReturned(1L, false));
+		
+		assertThat(exception).isSameAs(violation);
+	}
+	
+	@Test
+	@DisplayName("deve devolver em lote somente os empréstimos em aberto")
+	public void returnLoansTest() {
+		when(repository.findStatesByIds(new LinkedHashSet<>(Arrays.asList(1L, 2L, 3L)))).thenReturn(Arrays.asList(
+				new LoanStateDTO(1L, 11L, "123", false),
+				new LoanStateDTO(2L, 12L, "456", true)));
+		when(repository.findOpenStatesByIsbns(new LinkedHashSet<>(Arrays.asList("789", "000")))).thenReturn(Arrays.asList(
+				new LoanStateDTO(4L, 14L, "789", false)));
+		when(repository.markAllReturned(new LinkedHashSet<>(Arrays.asList(1L, 4L)))).thenReturn(2);
+		
+		BulkReturnResultDTO result = service.returnLoans(Arrays.asList(1L, 2L, 3L), Arrays.asList("789", "000"));
+		
+		verify(repository).markAllReturned(new LinkedHashSet<>(Arrays.asList(1L, 4L)));
+		assertThat(result.getReturned()).isEqualTo(2);
+		assertThat(result.getAlreadyReturned()).isEqualTo(1);
+		assertThat(result.getNotFound()).isEqualTo(2);
+		assertThat(result.getItems()).extracting(BulkReturnItemDTO::getStatus).containsExactly(
+				BulkReturnItemDTO.Status.RETURNED, BulkReturnItemDTO.Status.ALREADY_RETURNED,
+				BulkReturnItemDTO.Status.NOT_FOUND, BulkReturnItemDTO.Status.RETURNED,
+				BulkReturnItemDTO.Status.NOT_FOUND);
+		assertThat(result.getItems().get(3).getLoanId()).isEqualTo(4L);
+	}
+	
+	@Test
+	@DisplayName("não deve executar o UPDATE quando nenhum empréstimo está em aberto")
+	public void returnLoansNothingOpenTest() {
+		when(repository.findStatesByIds(new LinkedHashSet<>(Arrays.asList(2L)))).thenReturn(Arrays.asList(
+				new LoanStateDTO(2L, 12L, "456", true)));
+		
+		BulkReturnResultDTO result = service.returnLoans(Arrays.asList(2L), new ArrayList<>());
+		
+		verify(repository, never()).markAllReturned(Mockito.anyCollection());
+		verify(repository, never()).findOpenStatesByIsbns(Mockito.anyCollection());
+		assertThat(result.getAlreadyReturned()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("deve devolver uma vez cada empréstimo repetido por id ou isbn e contar as linhas alteradas")
+	public void returnLoansDuplicatesTest() {
+		when(repository.findStatesByIds(new LinkedHashSet<>(Arrays.asList(1L, 5L)))).thenReturn(Arrays.asList(
+				new LoanStateDTO(1L, 11L, "123", false),
+				new LoanStateDTO(5L, 15L, "555", false)));
+		when(repository.findOpenStatesByIsbns(new LinkedHashSet<>(Arrays.asList("123")))).thenReturn(Arrays.asList(
+				new LoanStateDTO(1L, 11L, "123", false)));
+		when(repository.markAllReturned(new LinkedHashSet<>(Arrays.asList(1L, 5L)))).thenReturn(1);
+		
+		BulkReturnResultDTO result = service.returnLoans(Arrays.asList(1L, 1L, 5L), Arrays.asList("123", "123"));
+		
+		assertThat(result.getItems()).extracting(BulkReturnItemDTO::getLoanId).containsExactly(1L, 5L);
+		assertThat(result.getReturned()).isEqualTo(1);
+		assertThat(result.getAlreadyReturned()).isEqualTo(1);
+		assertThat(result.getNotFound()).isZero();
+	}
 }